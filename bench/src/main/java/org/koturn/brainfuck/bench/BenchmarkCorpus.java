@@ -0,0 +1,70 @@
+package org.koturn.brainfuck.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
+
+/**
+ * Fixed corpus of brainfuck programs used by benchmarks.
+ * <ul>
+ *   <li>{@code hello}: Hello World! (startup and straight-line code)</li>
+ *   <li>{@code squares}: Squares from 0 to 10000 by Daniel B. Cristofani (arithmetic and output)</li>
+ *   <li>{@code nested}: Deeply nested counting loops</li>
+ *   <li>{@code scan}: Long scan loops such as {@code [>]} and {@code [<]} over 4000 cells</li>
+ *   <li>{@code echo}: Copies {@link #ECHO_INPUT_SIZE} bytes of input to output (input and output heavy)</li>
+ * </ul>
+ * Mandelbrot and Hanoi are not bundled because their sources cannot be redistributed with this repository;
+ * put them into the resource directory and add their names to the {@code @Param} lists to measure them.
+ */
+final class BenchmarkCorpus {
+    /**
+     * Size of the input of {@code echo}
+     */
+    static final int ECHO_INPUT_SIZE = 1 << 20;
+    /**
+     * Seed of the input of {@code echo}, which is fixed for reproducibility
+     */
+    private static final long ECHO_INPUT_SEED = 42;
+
+    /**
+     * This class is not instantiable
+     */
+    private BenchmarkCorpus() {
+    }
+
+    /**
+     * Load source code of a program in the corpus
+     * @param name  Name of the program
+     * @return  Brainfuck source code
+     */
+    static byte[] loadSource(String name) {
+        try (InputStream is = BenchmarkCorpus.class.getResourceAsStream(name + ".bf")) {
+            if (is == null) {
+                throw new IllegalArgumentException("Unknown program: " + name);
+            }
+            return is.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Create input of a program in the corpus
+     * @param name  Name of the program
+     * @return  Input of the program
+     */
+    static byte[] createInput(String name) {
+        if (!name.equals("echo")) {
+            return new byte[0];
+        }
+        // echo stops at the end of input (-1), so 0xff is excluded
+        byte[] input = new byte[ECHO_INPUT_SIZE];
+        Random random = new Random(ECHO_INPUT_SEED);
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (byte) random.nextInt(0xff);
+        }
+        return input;
+    }
+}
@@ -0,0 +1,79 @@
+package org.koturn.brainfuck.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.koturn.brainfuck.Brainfuck;
+import org.koturn.brainfuck.BrainfuckProgram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Time to load and to compile each program in {@link BenchmarkCorpus}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 3, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class CompileBenchmark {
+    /**
+     * Name of the program
+     */
+    @Param({"hello", "squares", "nested", "scan", "echo"})
+    private String program;
+
+    /**
+     * Source code of the program
+     */
+    private byte[] source;
+    /**
+     * Interpreter which has loaded the program
+     */
+    private Brainfuck loaded;
+
+    /**
+     * Load the program
+     * @throws IOException  Never thrown because the source code is in memory
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        source = BenchmarkCorpus.loadSource(program);
+        loaded = new Brainfuck();
+        loaded.load(new ByteArrayInputStream(source));
+    }
+
+    /**
+     * Load the program (read source code and match brackets)
+     * @return  Interpreter which has loaded the program
+     * @throws IOException  Never thrown because the source code is in memory
+     */
+    @Benchmark
+    public Brainfuck load() throws IOException {
+        Brainfuck bf = new Brainfuck();
+        bf.load(new ByteArrayInputStream(source));
+        return bf;
+    }
+
+    /**
+     * Compile the loaded program to IR-code
+     * @return  Compiled program
+     */
+    @Benchmark
+    public BrainfuckProgram compile() {
+        return loaded.compile();
+    }
+}
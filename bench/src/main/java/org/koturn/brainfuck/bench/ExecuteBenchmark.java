@@ -0,0 +1,83 @@
+package org.koturn.brainfuck.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.koturn.brainfuck.Brainfuck;
+import org.koturn.brainfuck.BrainfuckInput;
+import org.koturn.brainfuck.BrainfuckOutput;
+import org.koturn.brainfuck.BrainfuckProgram;
+import org.koturn.brainfuck.BrainfuckResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Execution time of each program in {@link BenchmarkCorpus} in each {@link Brainfuck.ExecuteMode}.
+ * Programs are compiled in advance, and their output is written to a null sink.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 3, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class ExecuteBenchmark {
+    /**
+     * Name of the program
+     */
+    @Param({"hello", "squares", "nested", "scan", "echo"})
+    private String program;
+    /**
+     * Execution mode
+     */
+    @Param({"Normal", "Compiled", "Jit", "Tiered"})
+    private Brainfuck.ExecuteMode mode;
+
+    /**
+     * Compiled program
+     */
+    private BrainfuckProgram compiled;
+    /**
+     * Input of the program
+     */
+    private byte[] input;
+    /**
+     * Output destination which discards everything
+     */
+    private BrainfuckOutput nullOutput;
+
+    /**
+     * Load and compile the program
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        Brainfuck bf = new Brainfuck();
+        bf.loadString(new String(BenchmarkCorpus.loadSource(program)));
+        compiled = bf.compile();
+        input = BenchmarkCorpus.createInput(program);
+        nullOutput = new BrainfuckOutput(OutputStream.nullOutputStream());
+    }
+
+    /**
+     * Execute the program
+     * @return  Result of the execution
+     * @throws IOException  Never thrown because input and output are in memory
+     */
+    @Benchmark
+    public BrainfuckResult execute() throws IOException {
+        return compiled.execute(Brainfuck.DEFAULT_HEAP_SIZE, mode, new BrainfuckInput(ByteBuffer.wrap(input)), nullOutput);
+    }
+}
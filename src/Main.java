@@ -1,7 +1,26 @@
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.koturn.brainfuck.Brainfuck;
+import org.koturn.brainfuck.BrainfuckInput;
+import org.koturn.brainfuck.BrainfuckLimit;
+import org.koturn.brainfuck.BrainfuckOutput;
+import org.koturn.brainfuck.BrainfuckProfile;
+import org.koturn.brainfuck.BrainfuckProgramCache;
+import org.koturn.brainfuck.BrainfuckResult;
 import org.koturn.util.ArgumentParser;
 import org.koturn.util.ArgumentParserException;
 import org.koturn.util.OptionItem;
@@ -10,6 +29,41 @@ import org.koturn.util.OptionItem;
  * Entry point class
  */
 public class Main {
+    /**
+     * Maximum number of loops shown in the report of {@code --profile}
+     */
+    private static final int PROFILE_LOOP_LIMIT = 20;
+
+    /**
+     * Result of one program executed by {@link #executeParallel}
+     */
+    private static final class JobResult {
+        /**
+         * Output of the program
+         */
+        final byte[] output;
+        /**
+         * Elapsed time including loading and compilation in nanoseconds
+         */
+        final long elapsedTime;
+        /**
+         * How the execution ended
+         */
+        final BrainfuckResult.Status status;
+
+        /**
+         * Ctor
+         * @param output       Output of the program
+         * @param elapsedTime  Elapsed time including loading and compilation in nanoseconds
+         * @param status       How the execution ended
+         */
+        JobResult(byte[] output, long elapsedTime, BrainfuckResult.Status status) {
+            this.output = output;
+            this.elapsedTime = elapsedTime;
+            this.status = status;
+        }
+    }
+
     /**
      * The entry point of this program
      * @param args  Command-line arguments
@@ -22,9 +76,28 @@ public class Main {
         ap.setOption(new OptionItem('t', "time", "Show execution time"));
         ap.setOption(new OptionItem('O', "optimize", OptionItem.OptionType.RequreidArgument, "Sepecify optimize level"
                 + ArgumentParser.newline() + "  0: No optimize"
-                + ArgumentParser.newline() + "  1: Compile to IR-code",
+                + ArgumentParser.newline() + "  1: Compile to IR-code"
+                + ArgumentParser.newline() + "  2: Also combine updates of the same cell"
+                + ArgumentParser.newline() + "  3: Also execute the program up to the first input at compile time"
+                + ArgumentParser.newline() + "     and remove loops and assignments which have no effect",
                 "LEVEL", 1));
-        ap.setOption(new OptionItem('H', "heapsize", OptionItem.OptionType.RequreidArgument, "Specify heap size", "HEAP_SIZE", 65536));
+        ap.setOption(new OptionItem("jit", "Translate IR-code to JVM bytecode before execution (implies -O1)"));
+        ap.setOption(new OptionItem("tiered", "Interpret IR-code and translate hot loops to JVM bytecode while executing it (implies -O1)"));
+        ap.setOption(new OptionItem('H', "heapsize", OptionItem.OptionType.RequreidArgument, "Specify maximum heap size", "HEAP_SIZE", Brainfuck.DEFAULT_HEAP_SIZE));
+        ap.setOption(new OptionItem("cell-bits", OptionItem.OptionType.RequreidArgument, "Specify bit width of each cell (8, 16 or 32)", "BITS", Brainfuck.DEFAULT_CELL_BITS));
+        ap.setOption(new OptionItem('o', "output", OptionItem.OptionType.RequreidArgument, "Write output to FILE instead of stdout", "FILE", ""));
+        ap.setOption(new OptionItem('i', "input", OptionItem.OptionType.RequreidArgument, "Read input from FILE (memory-mapped) instead of stdin", "FILE", ""));
+        ap.setOption(new OptionItem('B', "buffer-size", OptionItem.OptionType.RequreidArgument, "Specify input and output buffer size", "SIZE", BrainfuckOutput.DEFAULT_BUFFER_SIZE));
+        ap.setOption(new OptionItem('j', "jobs", OptionItem.OptionType.RequreidArgument, "Execute N programs concurrently"
+                + " (output of each program is buffered and written in argument order)", "N", 1));
+        ap.setOption(new OptionItem("max-steps", OptionItem.OptionType.RequreidArgument, "Stop each program after N iterations of loops (0: unlimited)", "N", 0L));
+        ap.setOption(new OptionItem("timeout", OptionItem.OptionType.RequreidArgument, "Stop each program after MS milliseconds (0: unlimited)", "MS", 0L));
+        ap.setOption(new OptionItem("profile", "Execute IR-code with profiling and show the hottest loops to stderr (implies -O1)"));
+        ap.setOption(new OptionItem("bfc", "Compile each program ahead of time to a runnable jar (BASENAME.jar, or FILE of -o) instead of executing it"
+                + ArgumentParser.newline() + "  -o DIR/NAME.class writes DIR/org/koturn/brainfuck/NAME.class, which needs DIR and this program on the class path"));
+        ap.setOption(new OptionItem("no-ir-cache", "Neither read nor write precompiled IR-code files (FILE" + Brainfuck.IR_FILE_SUFFIX + ") next to source files"));
+        ap.setOption(new OptionItem('v', "verbose", "Show statistics of each optimization pass to stderr"));
+        ap.setOption(new OptionItem("interactive", "Flush output before waiting for input (default if a console is attached)"));
         ap.parse(args);
         if (ap.<Boolean>getValue("help")) {
             ap.showUsage();
@@ -32,31 +105,255 @@ public class Main {
         }
         ArrayList<String> argList = ap.getRemnantArguments();
         int heapSize = ap.<Integer>getValue("heapsize");
+        int cellBits = ap.<Integer>getValue("cell-bits");
         int optLevel = ap.<Integer>getValue("optimize");
         boolean isMeasureTime = ap.<Boolean>getValue("time");
-        Brainfuck bf = new Brainfuck();
-        if (argList.size() == 0) {
-            bf.load(System.in);
-            long start = System.nanoTime();
-            if (optLevel > 0) {
-                bf.compile();
-            }
-            bf.execute(heapSize);
-            if (isMeasureTime) {
-                System.out.println("Execution time: " + (System.nanoTime() - start) / 1000 / 1000.0 + " ms");
+        String outputPath = ap.<String>getValue("output");
+        String inputPath = ap.<String>getValue("input");
+        int bufferSize = ap.<Integer>getValue("buffer-size");
+        int nJobs = ap.<Integer>getValue("jobs");
+        long maxSteps = ap.<Long>getValue("max-steps");
+        long timeout = ap.<Long>getValue("timeout");
+        boolean isProfile = ap.<Boolean>getValue("profile");
+        boolean isVerbose = ap.<Boolean>getValue("verbose");
+        boolean isIRCodeFileEnabled = !ap.<Boolean>getValue("no-ir-cache");
+        boolean isInteractive = ap.<Boolean>getValue("interactive") || System.console() != null;
+        Brainfuck.ExecuteMode mode = ap.<Boolean>getValue("jit") ? Brainfuck.ExecuteMode.Jit
+                : ap.<Boolean>getValue("tiered") ? Brainfuck.ExecuteMode.Tiered
+                : optLevel > 0 ? Brainfuck.ExecuteMode.Compiled
+                : Brainfuck.ExecuteMode.Normal;
+        // --jit, --tiered and --profile execute IR-code, so they imply -O1
+        int optimizeLevel = Math.min(Math.max(1, optLevel), Brainfuck.MAX_OPTIMIZE_LEVEL);
+        BrainfuckLimit limit = BrainfuckLimit.NONE;
+        if (maxSteps > 0) {
+            limit = limit.withSteps(maxSteps);
+        }
+        if (timeout > 0) {
+            limit = limit.withTimeout(timeout, TimeUnit.MILLISECONDS);
+        }
+        if (ap.<Boolean>getValue("bfc")) {
+            if (argList.size() == 0) {
+                ap.showUsage();
+                System.exit(1);
             }
-        } else {
+            Brainfuck bf = new Brainfuck();
+            bf.setCellBits(cellBits);
+            bf.setOptimizeLevel(optimizeLevel);
+            bf.setVerbose(isVerbose ? System.err : null);
+            bf.setIRCodeFileEnabled(isIRCodeFileEnabled);
             for (String filepath : argList) {
-                bf.load(filepath);
+                bf.loadPrecompiled(filepath);
+                Path outPath = !outputPath.isEmpty() && argList.size() == 1 ? Paths.get(outputPath)
+                    : Paths.get(removeExtension(filepath) + ".jar");
+                String className = toClassName(removeExtension(outPath.getFileName().toString()));
+                if (outPath.toString().endsWith(".class")) {
+                    Path directory = outPath.getParent() == null ? Paths.get("") : outPath.getParent();
+                    bf.getProgram().writeClass(heapSize, directory, className);
+                } else {
+                    bf.getProgram().writeJar(heapSize, outPath, className);
+                }
+            }
+            return;
+        }
+        try (FileChannel outChannel = outputPath.isEmpty() ? null : FileChannel.open(Paths.get(outputPath),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                FileChannel inChannel = inputPath.isEmpty() ? null : FileChannel.open(Paths.get(inputPath), StandardOpenOption.READ)) {
+            BrainfuckOutput out = outChannel == null ? new BrainfuckOutput(System.out, bufferSize) : new BrainfuckOutput(outChannel, bufferSize);
+            BrainfuckInput in = inChannel == null ? new BrainfuckInput(System.in, bufferSize) : BrainfuckInput.map(inChannel);
+            if (isInteractive) {
+                in.tie(out);
+            }
+            Brainfuck bf = new Brainfuck();
+            bf.setCellBits(cellBits);
+            bf.setOptimizeLevel(optimizeLevel);
+            bf.setVerbose(isVerbose ? System.err : null);
+            bf.setIRCodeFileEnabled(isIRCodeFileEnabled);
+            bf.setProgramCache(new BrainfuckProgramCache());
+            bf.setLimit(limit);
+            bf.setOutput(out);
+            bf.setInput(in);
+            if (isProfile) {
+                boolean isSucceeded = true;
+                if (argList.size() == 0) {
+                    bf.load(System.in);
+                    BrainfuckProfile profile = bf.profile(heapSize);
+                    System.err.print(profile.format(PROFILE_LOOP_LIMIT));
+                    isSucceeded = reportStatus("stdin", profile.getStatus());
+                }
+                for (String filepath : argList) {
+                    // Not loaded from a precompiled IR-code file so that loops are mapped to source positions
+                    bf.load(filepath);
+                    BrainfuckProfile profile = bf.profile(heapSize);
+                    System.err.println("Profile of " + filepath + ":");
+                    System.err.print(profile.format(PROFILE_LOOP_LIMIT));
+                    isSucceeded &= reportStatus(filepath, profile.getStatus());
+                }
+                if (!isSucceeded) {
+                    System.exit(1);
+                }
+            } else if (nJobs > 1 && argList.size() > 1) {
+                BrainfuckProgramCache cache = new BrainfuckProgramCache();
+                boolean isSucceeded = executeParallel(argList, nJobs, mode, heapSize, cellBits, optimizeLevel, limit, isIRCodeFileEnabled, cache, inChannel, out, isMeasureTime);
+                if (!isSucceeded) {
+                    System.exit(1);
+                }
+            } else if (argList.size() == 0) {
                 long start = System.nanoTime();
-                if (optLevel > 0) {
-                    bf.compile();
+                if (mode == Brainfuck.ExecuteMode.Normal) {
+                    bf.load(System.in);
+                } else {
+                    bf.compile(System.in);
                 }
-                bf.execute(heapSize);
+                BrainfuckResult result = bf.execute(heapSize, mode);
                 if (isMeasureTime) {
                     System.out.println("Execution time: " + (System.nanoTime() - start) / 1000 / 1000.0 + " ms");
                 }
+                if (!reportStatus("stdin", result.getStatus())) {
+                    System.exit(1);
+                }
+            } else {
+                boolean isSucceeded = true;
+                for (String filepath : argList) {
+                    long start = System.nanoTime();
+                    if (mode == Brainfuck.ExecuteMode.Normal) {
+                        bf.load(filepath);
+                    } else {
+                        bf.loadPrecompiled(filepath);
+                    }
+                    BrainfuckResult result = bf.execute(heapSize, mode);
+                    if (isMeasureTime) {
+                        System.out.println("Execution time: " + (System.nanoTime() - start) / 1000 / 1000.0 + " ms");
+                    }
+                    isSucceeded &= reportStatus(filepath, result.getStatus());
+                }
+                if (!isSucceeded) {
+                    System.exit(1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the extension of a file name
+     * @param filepath  Path to a file
+     * @return  {@code filepath} without the extension
+     */
+    private static String removeExtension(String filepath) {
+        int index = filepath.lastIndexOf('.');
+        return index > Math.max(filepath.lastIndexOf('/'), filepath.lastIndexOf('\\')) ? filepath.substring(0, index) : filepath;
+    }
+
+    /**
+     * Make a class name from a file name by replacing characters which cannot be used in a class name with {@code '_'}
+     * @param name  File name without the extension
+     * @return  Class name
+     */
+    private static String toClassName(String name) {
+        StringBuilder sb = new StringBuilder(name);
+        for (int i = 0; i < sb.length(); i++) {
+            if (!Character.isJavaIdentifierPart(sb.charAt(i))) {
+                sb.setCharAt(i, '_');
+            }
+        }
+        if (sb.length() == 0 || !Character.isJavaIdentifierStart(sb.charAt(0))) {
+            sb.insert(0, '_');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Report to standard error that a program was stopped by a limit
+     * @param name    Name of the program
+     * @param status  How the execution ended
+     * @return  {@code true} if the program terminated, otherwise {@code false}
+     */
+    private static boolean reportStatus(String name, BrainfuckResult.Status status) {
+        switch (status) {
+            case StepLimitExceeded:
+                System.err.println(name + ": Stopped because the maximum number of steps is exceeded");
+                return false;
+            case TimedOut:
+                System.err.println(name + ": Stopped because the timeout elapsed");
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Execute programs concurrently and write their output in the order of {@code files}.
+     * Each program reads its own copy of the input: the memory-mapped input file if {@code inChannel} is given,
+     * otherwise whole standard input which is read in advance.
+     * A program which throws an exception is reported to standard error and the remaining programs are still executed.
+     * @param files                Paths to brainfuck source code
+     * @param nJobs                The number of threads
+     * @param mode                 Execution mode
+     * @param heapSize             Maximum runtime heap size
+     * @param cellBits             Bit width of each cell
+     * @param optimizeLevel        Optimize level
+     * @param limit                Limit of each execution
+     * @param isIRCodeFileEnabled  Read and write precompiled IR-code files or not
+     * @param cache                Cache of compiled programs shared by all threads
+     * @param inChannel            Input file ({@code null} means standard input)
+     * @param out                  Output destination
+     * @param isMeasureTime        Show execution time of each program or not
+     * @return  {@code true} if all programs are executed successfully, otherwise {@code false}
+     * @throws IOException  Throw if IO error is occured while reading standard input or writing output
+     */
+    private static boolean executeParallel(List<String> files, int nJobs, Brainfuck.ExecuteMode mode, int heapSize, int cellBits,
+            int optimizeLevel, BrainfuckLimit limit, boolean isIRCodeFileEnabled, BrainfuckProgramCache cache, FileChannel inChannel, BrainfuckOutput out, boolean isMeasureTime) throws IOException {
+        byte[] stdinBytes = inChannel == null ? System.in.readAllBytes() : null;
+        ExecutorService executor = Executors.newFixedThreadPool(nJobs);
+        // Limit the number of programs executed ahead so that buffered output doesn't grow without bound
+        int window = nJobs * 2;
+        ArrayDeque<Future<JobResult>> futures = new ArrayDeque<>();
+        boolean isSucceeded = true;
+        try {
+            int nSubmitted = 0;
+            for (String filepath : files) {
+                for (; nSubmitted < files.size() && futures.size() < window; nSubmitted++) {
+                    String path = files.get(nSubmitted);
+                    futures.add(executor.submit(() -> {
+                        long start = System.nanoTime();
+                        Brainfuck bf = new Brainfuck();
+                        bf.setCellBits(cellBits);
+                        bf.setOptimizeLevel(optimizeLevel);
+                        bf.setProgramCache(cache);
+                        bf.setLimit(limit);
+                        bf.setIRCodeFileEnabled(isIRCodeFileEnabled);
+                        if (mode == Brainfuck.ExecuteMode.Normal) {
+                            bf.load(path);
+                        } else {
+                            bf.loadPrecompiled(path);
+                        }
+                        BrainfuckInput in = inChannel == null ? new BrainfuckInput(ByteBuffer.wrap(stdinBytes)) : BrainfuckInput.map(inChannel);
+                        ByteArrayOutputStream os = new ByteArrayOutputStream();
+                        BrainfuckResult result = bf.execute(heapSize, mode, in, new BrainfuckOutput(os));
+                        return new JobResult(os.toByteArray(), System.nanoTime() - start, result.getStatus());
+                    }));
+                }
+                JobResult result;
+                try {
+                    result = futures.poll().get();
+                } catch (ExecutionException e) {
+                    out.flush();
+                    System.err.println(filepath + ": " + e.getCause());
+                    isSucceeded = false;
+                    continue;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                out.write(result.output, 0, result.output.length);
+                out.flush();
+                if (isMeasureTime) {
+                    System.out.println("Execution time: " + result.elapsedTime / 1000 / 1000.0 + " ms (" + filepath + ")");
+                }
+                isSucceeded &= reportStatus(filepath, result.status);
             }
+        } finally {
+            executor.shutdownNow();
         }
+        return isSucceeded;
     }
 }
@@ -0,0 +1,150 @@
+package org.koturn.brainfuck;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+
+/**
+ * Ahead-of-time compiler from brainfuck IR-code to a class file or a runnable jar.
+ * The generated class is the class which {@link BfJitCompiler} generates plus a {@code main} method.
+ * It belongs to the package of this library because it accesses the heap directly,
+ * and a jar also contains the runtime classes which it needs, so the jar runs by itself.
+ */
+final class BfAotCompiler {
+    /**
+     * Package of generated classes
+     */
+    private static final String PACKAGE_NAME = "org.koturn.brainfuck";
+    /**
+     * Classes which generated classes need at runtime
+     */
+    private static final Class<?>[] RUNTIME_CLASSES = {
+        BfAotMain.class,
+        BfBudget.class,
+        BfBudgetExhaustedException.class,
+        BfCompiledCode.class,
+        BfTape.class,
+        BfTapeScanner.class,
+        BrainfuckInput.class,
+        BrainfuckOutput.class,
+        BrainfuckException.class,
+        BrainfuckTapeOverflowException.class
+    };
+
+    /**
+     * This class is not instantiable
+     */
+    private BfAotCompiler() {
+    }
+
+    /**
+     * Compile IR-code to a class file image
+     * @param ircode     Brainfuck IR-code
+     * @param cellBits   Bit width of each cell (8, 16 or 32)
+     * @param heapSize   Maximum runtime heap size of the generated program
+     * @param className  Simple name of the generated class
+     * @return  Class file image
+     * @throws IllegalArgumentException  Throw when {@code className} is not a valid class name or it is the name of a runtime class
+     * @throws IllegalStateException  Throw when IR-code is too large to fit in one JVM method
+     */
+    static byte[] compile(BfIRCode ircode, int cellBits, int heapSize, String className) {
+        if (!isValidClassName(className)) {
+            throw new IllegalArgumentException("Invalid class name: " + className);
+        }
+        byte[] image = BfJitCompiler.generateClass(ircode, cellBits, heapSize, toInternalName(className), true);
+        if (image == null) {
+            throw new IllegalStateException("Program is too large to compile to a class file");
+        }
+        return image;
+    }
+
+    /**
+     * Write a generated class file to the directory of {@link #PACKAGE_NAME} under a class path directory,
+     * creating the directories of the package
+     * @param directory  Class path directory
+     * @param image      Class file image generated by {@link #compile(BfIRCode, int, int, String)}
+     * @param className  Simple name of the generated class
+     * @return  Path to the written class file
+     * @throws IOException  Throw when something error is occured while writing the file
+     */
+    static Path writeClass(Path directory, byte[] image, String className) throws IOException {
+        Path path = directory.resolve(toInternalName(className) + ".class");
+        Files.createDirectories(path.getParent());
+        return Files.write(path, image);
+    }
+
+    /**
+     * Write a runnable jar which consists of a generated class and the runtime classes
+     * @param path       Path to the jar
+     * @param image      Class file image generated by {@link #compile(BfIRCode, int, int, String)}
+     * @param className  Simple name of the generated class
+     * @throws IOException  Throw when something error is occured while writing the jar
+     */
+    static void writeJar(Path path, byte[] image, String className) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, PACKAGE_NAME + "." + className);
+        try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(path), manifest)) {
+            writeEntry(jos, toInternalName(className) + ".class", image);
+            for (Class<?> clazz : RUNTIME_CLASSES) {
+                String name = clazz.getSimpleName() + ".class";
+                try (InputStream is = clazz.getResourceAsStream(name)) {
+                    if (is == null) {
+                        throw new IllegalStateException("Class file is not found: " + name);
+                    }
+                    writeEntry(jos, toInternalName(clazz.getSimpleName()) + ".class", is.readAllBytes());
+                }
+            }
+        }
+    }
+
+    /**
+     * Write one entry of a jar
+     * @param jos    Destination jar
+     * @param name   Name of the entry
+     * @param bytes  Content of the entry
+     * @throws IOException  Throw when something error is occured while writing the jar
+     */
+    private static void writeEntry(JarOutputStream jos, String name, byte[] bytes) throws IOException {
+        jos.putNextEntry(new JarEntry(name));
+        jos.write(bytes);
+        jos.closeEntry();
+    }
+
+    /**
+     * Get the internal name of a class in {@link #PACKAGE_NAME}
+     * @param className  Simple name of the class
+     * @return  Internal name of the class
+     */
+    private static String toInternalName(String className) {
+        return PACKAGE_NAME.replace('.', '/') + "/" + className;
+    }
+
+    /**
+     * Check whether a string is a valid simple class name which doesn't conflict with the runtime classes
+     * @param className  A string
+     * @return  {@code true} if {@code className} is a valid simple class name, otherwise {@code false}
+     */
+    private static boolean isValidClassName(String className) {
+        if (className.isEmpty() || !Character.isJavaIdentifierStart(className.charAt(0))) {
+            return false;
+        }
+        for (Class<?> clazz : RUNTIME_CLASSES) {
+            if (clazz.getSimpleName().equals(className)) {
+                return false;
+            }
+        }
+        for (int i = 1; i < className.length(); i++) {
+            if (!Character.isJavaIdentifierPart(className.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
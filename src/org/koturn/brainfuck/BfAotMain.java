@@ -0,0 +1,43 @@
+package org.koturn.brainfuck;
+
+import java.io.IOException;
+
+
+/**
+ * Runtime entry of programs compiled ahead of time by {@link BfAotCompiler}.
+ * The {@code main} method of each generated class calls {@link #run(BfCompiledCode, int, int, int, int, String[])},
+ * so neither the parser nor the interpreters are needed to execute the program.
+ */
+final class BfAotMain {
+    /**
+     * This class is not instantiable
+     */
+    private BfAotMain() {
+    }
+
+    /**
+     * Execute a compiled program with standard input and standard output
+     * @param code       Compiled program
+     * @param cellBits   Bit width of each cell (8, 16 or 32)
+     * @param heapSize   Maximum runtime heap size
+     * @param minOffset  Minimum offset of cells accessed by the program
+     * @param maxOffset  Maximum offset of cells accessed by the program
+     * @param args       Command-line arguments (unused)
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     */
+    static void run(BfCompiledCode code, int cellBits, int heapSize, int minOffset, int maxOffset, String[] args) throws IOException {
+        BrainfuckOutput out = new BrainfuckOutput(System.out);
+        BrainfuckInput in = new BrainfuckInput(System.in);
+        if (System.console() != null) {
+            in.tie(out);
+        }
+        BfTape tape = new BfTape(heapSize, cellBits);
+        try {
+            code.run(tape, tape.reserve(0, minOffset, maxOffset), out, in, BfBudget.unlimited());
+        } catch (IndexOutOfBoundsException e) {
+            throw tape.toOverflow(e);
+        } finally {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.koturn.brainfuck;
+
+/**
+ * Remaining steps and deadline of one execution.
+ * Interpreters and compiled code keep fuel, the number of back-edges which may be taken before the next check,
+ * in a local variable, decrement it at each back-edge and call {@link #refill()} only when it becomes negative,
+ * so the hot loop pays one decrement and one branch per iteration for the limit.
+ * The fuel is handed over through {@link #fuel} when the execution moves between an interpreter and compiled code.
+ */
+final class BfBudget {
+    /**
+     * Maximum number of back-edges between checks
+     */
+    static final int BATCH_SIZE = 1 << 16;
+
+    /**
+     * Fuel of the current batch, which is handed over between an interpreter and compiled code
+     */
+    int fuel;
+    /**
+     * The number of steps which are not handed out as fuel yet
+     */
+    private long remainingSteps;
+    /**
+     * Deadline in {@link System#nanoTime()}
+     */
+    private final long deadline;
+    /**
+     * Whether {@link #deadline} is valid or not
+     */
+    private final boolean hasDeadline;
+
+    /**
+     * Create a budget starting now
+     * @param maxSteps  Maximum number of steps ({@link Long#MAX_VALUE} means unlimited)
+     * @param timeout   Timeout in nanoseconds ({@link Long#MAX_VALUE} means unlimited)
+     */
+    BfBudget(long maxSteps, long timeout) {
+        this.remainingSteps = maxSteps;
+        this.hasDeadline = timeout != Long.MAX_VALUE;
+        this.deadline = hasDeadline ? System.nanoTime() + timeout : 0;
+    }
+
+    /**
+     * Create an unlimited budget
+     * @return  Unlimited budget
+     */
+    static BfBudget unlimited() {
+        return new BfBudget(Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Consume steps which were executed at compile time, before the first batch
+     * @param steps  The number of steps
+     * @throws BfBudgetExhaustedException  Throw when fewer steps remain
+     */
+    void charge(long steps) {
+        if (steps > remainingSteps) {
+            throw new BfBudgetExhaustedException(false);
+        }
+        remainingSteps -= steps;
+    }
+
+    /**
+     * Start the next batch, which is called at a back-edge whose fuel became negative.
+     * The back-edge itself is taken from the new batch.
+     * @return  Fuel of the new batch excluding the back-edge
+     * @throws BfBudgetExhaustedException  Throw when the deadline has passed or no steps remain
+     */
+    int refill() {
+        if (hasDeadline && System.nanoTime() - deadline >= 0) {
+            throw new BfBudgetExhaustedException(true);
+        }
+        if (remainingSteps == 0) {
+            throw new BfBudgetExhaustedException(false);
+        }
+        int batch = (int) Math.min(BATCH_SIZE, remainingSteps);
+        remainingSteps -= batch;
+        return batch - 1;
+    }
+}
@@ -0,0 +1,30 @@
+package org.koturn.brainfuck;
+
+/**
+ * An exception throwed by {@link BfBudget#refill()} to stop an execution.
+ * This is caught by {@link BrainfuckProgram} and reported as the status of {@link BrainfuckResult},
+ * so it has neither a message nor a stack trace.
+ */
+final class BfBudgetExhaustedException extends RuntimeException {
+    /**
+     * Whether the deadline has passed or the steps ran out
+     */
+    private final boolean isTimedOut;
+
+    /**
+     * Ctor
+     * @param isTimedOut  {@code true} if the deadline has passed, {@code false} if the steps ran out
+     */
+    BfBudgetExhaustedException(boolean isTimedOut) {
+        super(null, null, false, false);
+        this.isTimedOut = isTimedOut;
+    }
+
+    /**
+     * Getter of {@link #isTimedOut}
+     * @return Value of {@link #isTimedOut}
+     */
+    boolean isTimedOut() {
+        return isTimedOut;
+    }
+}
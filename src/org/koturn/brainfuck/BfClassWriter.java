@@ -0,0 +1,549 @@
+package org.koturn.brainfuck;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+
+/**
+ * Minimal class file writer used by {@link BfJitCompiler}.
+ * This class supports only what brainfuck code generation requires:
+ * a constant pool, methods with a Code attribute, and StackMapTable frames
+ * whose locals are identical to the method parameters and whose stacks are empty.
+ */
+final class BfClassWriter {
+    /**
+     * Class file major version (Java 17)
+     */
+    private static final int MAJOR_VERSION = 61;
+    /**
+     * Maximum length of bytecode supported by this writer.
+     * Every branch offset fits in a signed 16-bit value within this length.
+     */
+    static final int MAX_CODE_LENGTH = Short.MAX_VALUE;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int ALOAD = 0x19;
+    static final int IALOAD = 0x2e;
+    static final int BALOAD = 0x33;
+    static final int SALOAD = 0x35;
+    static final int ISTORE = 0x36;
+    static final int ASTORE = 0x3a;
+    static final int IASTORE = 0x4f;
+    static final int BASTORE = 0x54;
+    static final int SASTORE = 0x56;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int DUP2 = 0x5c;
+    static final int IADD = 0x60;
+    static final int ISUB = 0x64;
+    static final int IMUL = 0x68;
+    static final int IINC = 0x84;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IF_ICMPLT = 0xa1;
+    static final int GOTO = 0xa7;
+    static final int IRETURN = 0xac;
+    static final int RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2;
+    static final int GETFIELD = 0xb4;
+    static final int PUTFIELD = 0xb5;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int INVOKEINTERFACE = 0xb9;
+    static final int NEW = 0xbb;
+    static final int NEWARRAY = 0xbc;
+    static final int ARRAYLENGTH = 0xbe;
+    static final int WIDE = 0xc4;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    /**
+     * Serialized constant pool entries
+     */
+    private ByteArrayOutputStream constantPool = new ByteArrayOutputStream();
+    /**
+     * Map from constant pool entry key to its index
+     */
+    private HashMap<String, Integer> constantMap = new HashMap<>();
+    /**
+     * Next index of constant pool
+     */
+    private int constantCount = 1;
+    /**
+     * Serialized methods
+     */
+    private ArrayList<byte[]> methods = new ArrayList<>();
+
+    /**
+     * Get index of a CONSTANT_Utf8 entry
+     * @param value  String value
+     * @return  Constant pool index
+     */
+    int utf8(String value) {
+        Integer index = constantMap.get("U" + value);
+        if (index != null) {
+            return index;
+        }
+        DataOutputStream dos = new DataOutputStream(constantPool);
+        try {
+            dos.writeByte(CONSTANT_UTF8);
+            dos.writeUTF(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return register("U" + value);
+    }
+
+    /**
+     * Get index of a CONSTANT_Integer entry
+     * @param value  Integer value
+     * @return  Constant pool index
+     */
+    int integer(int value) {
+        Integer index = constantMap.get("I" + value);
+        if (index != null) {
+            return index;
+        }
+        constantPool.write(CONSTANT_INTEGER);
+        writeInt(constantPool, value);
+        return register("I" + value);
+    }
+
+    /**
+     * Get index of a CONSTANT_Class entry
+     * @param internalName  Internal name of the class (e.g. {@code java/lang/Object})
+     * @return  Constant pool index
+     */
+    int classRef(String internalName) {
+        return reference(CONSTANT_CLASS, "C" + internalName, utf8(internalName));
+    }
+
+    /**
+     * Get index of a CONSTANT_String entry
+     * @param value  String value
+     * @return  Constant pool index
+     */
+    int string(String value) {
+        return reference(CONSTANT_STRING, "S" + value, utf8(value));
+    }
+
+    /**
+     * Get index of a CONSTANT_Fieldref entry
+     * @param owner  Internal name of the owner class
+     * @param name   Field name
+     * @param desc   Field descriptor
+     * @return  Constant pool index
+     */
+    int fieldRef(String owner, String name, String desc) {
+        return memberRef(CONSTANT_FIELDREF, owner, name, desc);
+    }
+
+    /**
+     * Get index of a CONSTANT_Methodref entry
+     * @param owner  Internal name of the owner class
+     * @param name   Method name
+     * @param desc   Method descriptor
+     * @return  Constant pool index
+     */
+    int methodRef(String owner, String name, String desc) {
+        return memberRef(CONSTANT_METHODREF, owner, name, desc);
+    }
+
+    /**
+     * Get index of a CONSTANT_InterfaceMethodref entry
+     * @param owner  Internal name of the owner interface
+     * @param name   Method name
+     * @param desc   Method descriptor
+     * @return  Constant pool index
+     */
+    int interfaceMethodRef(String owner, String name, String desc) {
+        return memberRef(CONSTANT_INTERFACE_METHODREF, owner, name, desc);
+    }
+
+    /**
+     * Add a method to this class
+     * @param access  Access flags
+     * @param name    Method name
+     * @param desc    Method descriptor
+     * @param code    Bytecode of the method
+     */
+    void addMethod(int access, String name, String desc, Code code) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        writeShort(bos, access);
+        writeShort(bos, utf8(name));
+        writeShort(bos, utf8(desc));
+        writeShort(bos, 1);
+        byte[] stackMapTable = code.getStackMapTable();
+        ByteArrayOutputStream attr = new ByteArrayOutputStream();
+        writeShort(attr, code.maxStack);
+        writeShort(attr, code.maxLocals);
+        writeInt(attr, code.length);
+        attr.write(code.bytes, 0, code.length);
+        writeShort(attr, 0);
+        if (stackMapTable == null) {
+            writeShort(attr, 0);
+        } else {
+            writeShort(attr, 1);
+            writeShort(attr, utf8("StackMapTable"));
+            writeInt(attr, stackMapTable.length);
+            attr.write(stackMapTable, 0, stackMapTable.length);
+        }
+        writeShort(bos, utf8("Code"));
+        writeInt(bos, attr.size());
+        bos.writeBytes(attr.toByteArray());
+        methods.add(bos.toByteArray());
+    }
+
+    /**
+     * Serialize this class
+     * @param access      Access flags
+     * @param name        Internal name of this class
+     * @param superName   Internal name of the super class
+     * @param interfaces  Internal names of implemented interfaces
+     * @return  Class file image
+     */
+    byte[] toByteArray(int access, String name, String superName, String... interfaces) {
+        int thisIndex = classRef(name);
+        int superIndex = classRef(superName);
+        int[] interfaceIndexes = new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaceIndexes[i] = classRef(interfaces[i]);
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        writeInt(bos, 0xcafebabe);
+        writeShort(bos, 0);
+        writeShort(bos, MAJOR_VERSION);
+        writeShort(bos, constantCount);
+        bos.writeBytes(constantPool.toByteArray());
+        writeShort(bos, access);
+        writeShort(bos, thisIndex);
+        writeShort(bos, superIndex);
+        writeShort(bos, interfaceIndexes.length);
+        for (int index : interfaceIndexes) {
+            writeShort(bos, index);
+        }
+        writeShort(bos, 0);
+        writeShort(bos, methods.size());
+        for (byte[] method : methods) {
+            bos.write(method, 0, method.length);
+        }
+        writeShort(bos, 0);
+        return bos.toByteArray();
+    }
+
+    /**
+     * Get index of a constant pool entry which refers another entry
+     * @param tag    Tag of the entry
+     * @param key    Key for {@link #constantMap}
+     * @param index  Index of referred entry
+     * @return  Constant pool index
+     */
+    private int reference(int tag, String key, int index) {
+        Integer result = constantMap.get(key);
+        if (result != null) {
+            return result;
+        }
+        constantPool.write(tag);
+        writeShort(constantPool, index);
+        return register(key);
+    }
+
+    /**
+     * Get index of a field or method reference entry
+     * @param tag    Tag of the entry
+     * @param owner  Internal name of the owner class
+     * @param name   Member name
+     * @param desc   Member descriptor
+     * @return  Constant pool index
+     */
+    private int memberRef(int tag, String owner, String name, String desc) {
+        String key = "M" + tag + owner + '.' + name + desc;
+        Integer result = constantMap.get(key);
+        if (result != null) {
+            return result;
+        }
+        int classIndex = classRef(owner);
+        String natKey = "N" + name + ' ' + desc;
+        Integer natIndex = constantMap.get(natKey);
+        if (natIndex == null) {
+            int nameIndex = utf8(name);
+            int descIndex = utf8(desc);
+            constantPool.write(CONSTANT_NAME_AND_TYPE);
+            writeShort(constantPool, nameIndex);
+            writeShort(constantPool, descIndex);
+            natIndex = register(natKey);
+        }
+        constantPool.write(tag);
+        writeShort(constantPool, classIndex);
+        writeShort(constantPool, natIndex);
+        return register(key);
+    }
+
+    /**
+     * Register the last written constant pool entry
+     * @param key  Key for {@link #constantMap}
+     * @return  Index of the entry
+     */
+    private int register(String key) {
+        constantMap.put(key, constantCount);
+        return constantCount++;
+    }
+
+    /**
+     * Write 2 bytes in big endian
+     * @param bos    Destination
+     * @param value  Value to write
+     */
+    private static void writeShort(ByteArrayOutputStream bos, int value) {
+        bos.write(value >>> 8);
+        bos.write(value);
+    }
+
+    /**
+     * Write 4 bytes in big endian
+     * @param bos    Destination
+     * @param value  Value to write
+     */
+    private static void writeInt(ByteArrayOutputStream bos, int value) {
+        writeShort(bos, value >>> 16);
+        writeShort(bos, value);
+    }
+
+
+    /**
+     * Bytecode of one method.
+     * All branch targets must be marked with {@link #frame()}; their frames are emitted as {@code same_frame},
+     * so locals must not be changed from the method parameters at any branch target.
+     */
+    static final class Code {
+        /**
+         * Bytecode buffer
+         */
+        private byte[] bytes = new byte[256];
+        /**
+         * Length of bytecode
+         */
+        private int length;
+        /**
+         * Offsets of branch targets
+         */
+        private int[] frames = new int[16];
+        /**
+         * The number of {@link #frames}
+         */
+        private int frameCount;
+        /**
+         * Max stack depth
+         */
+        private int maxStack;
+        /**
+         * The number of local variable slots
+         */
+        private int maxLocals;
+
+        /**
+         * Create empty bytecode
+         * @param maxStack   Max stack depth
+         * @param maxLocals  The number of local variable slots
+         */
+        Code(int maxStack, int maxLocals) {
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        /**
+         * Get current offset
+         * @return  Current length of bytecode
+         */
+        int offset() {
+            return length;
+        }
+
+        /**
+         * Emit one byte
+         * @param b  A byte to emit
+         * @return  This instance
+         */
+        Code op(int b) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, length << 1);
+            }
+            bytes[length++] = (byte) b;
+            return this;
+        }
+
+        /**
+         * Emit an instruction with a 2-bytes operand
+         * @param opcode   Opcode
+         * @param operand  Operand
+         * @return  This instance
+         */
+        Code op2(int opcode, int operand) {
+            return op(opcode).op(operand >>> 8).op(operand);
+        }
+
+        /**
+         * Emit a load or store instruction of a local variable
+         * @param opcode  One of {@link #ILOAD}, {@link #ALOAD}, {@link #ISTORE} and {@link #ASTORE}
+         * @param index   Index of the local variable
+         * @return  This instance
+         */
+        Code local(int opcode, int index) {
+            if (index <= 3) {
+                int base = opcode == ILOAD ? 0x1a : opcode == ALOAD ? 0x2a : opcode == ISTORE ? 0x3b : 0x4b;
+                return op(base + index);
+            }
+            return op(opcode).op(index);
+        }
+
+        /**
+         * Emit an instruction which pushes an int constant
+         * @param cw     Class writer which owns the constant pool
+         * @param value  Value to push
+         * @return  This instance
+         */
+        Code pushInt(BfClassWriter cw, int value) {
+            if (value >= -1 && value <= 5) {
+                return op(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                return op(BIPUSH).op(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                return op2(SIPUSH, value);
+            }
+            return ldc(cw.integer(value));
+        }
+
+        /**
+         * Emit an instruction which pushes a constant of the constant pool
+         * @param index  Constant pool index
+         * @return  This instance
+         */
+        Code ldc(int index) {
+            return index < 256 ? op(LDC).op(index) : op2(LDC_W, index);
+        }
+
+        /**
+         * Emit an instruction which adds a constant to an int local variable
+         * @param cw     Class writer which owns the constant pool
+         * @param index  Index of the local variable
+         * @param value  Value to add
+         * @return  This instance
+         */
+        Code iinc(BfClassWriter cw, int index, int value) {
+            if (value == 0) {
+                return this;
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE && index < 256) {
+                return op(IINC).op(index).op(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                return op(WIDE).op2(IINC, index).op(value >>> 8).op(value);
+            }
+            return local(ILOAD, index).pushInt(cw, value).op(IADD).local(ISTORE, index);
+        }
+
+        /**
+         * Emit a branch instruction whose target is not determined yet
+         * @param opcode  Branch opcode
+         * @return  Offset of the branch instruction, which is passed to {@link #patch(int, int)}
+         */
+        int branch(int opcode) {
+            int at = length;
+            op2(opcode, 0);
+            return at;
+        }
+
+        /**
+         * Emit a branch instruction to the known target
+         * @param opcode  Branch opcode
+         * @param target  Offset of the branch target
+         * @return  This instance
+         */
+        Code branch(int opcode, int target) {
+            patch(branch(opcode), target);
+            return this;
+        }
+
+        /**
+         * Set the target of a branch instruction emitted by {@link #branch(int)}
+         * @param at      Offset of the branch instruction
+         * @param target  Offset of the branch target
+         */
+        void patch(int at, int target) {
+            int delta = target - at;
+            bytes[at + 1] = (byte) (delta >>> 8);
+            bytes[at + 2] = (byte) delta;
+        }
+
+        /**
+         * Mark current offset as a branch target
+         * @return  Current offset
+         */
+        int frame() {
+            if (frameCount == 0 || frames[frameCount - 1] != length) {
+                if (frameCount == frames.length) {
+                    frames = Arrays.copyOf(frames, frameCount << 1);
+                }
+                frames[frameCount++] = length;
+            }
+            return length;
+        }
+
+        /**
+         * Build StackMapTable attribute body
+         * @return  StackMapTable attribute body, or {@code null} if there is no branch target
+         */
+        private byte[] getStackMapTable() {
+            if (frameCount == 0) {
+                return null;
+            }
+            int[] offsets = Arrays.copyOf(frames, frameCount);
+            Arrays.sort(offsets);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            int count = 0;
+            ByteArrayOutputStream entries = new ByteArrayOutputStream();
+            int prev = -1;
+            for (int offset : offsets) {
+                if (offset == prev) {
+                    continue;
+                }
+                int delta = offset - prev - 1;
+                if (delta < 64) {
+                    entries.write(delta);
+                } else {
+                    entries.write(251);
+                    writeShort(entries, delta);
+                }
+                prev = offset;
+                count++;
+            }
+            writeShort(bos, count);
+            bos.writeBytes(entries.toByteArray());
+            return bos.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.koturn.brainfuck;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Pass which combines {@link BfInstruction#ADD} and {@link BfInstruction#SET} to the same cell in straight-line code.
+ * Updates of different cells commute, so each run of {@link BfInstruction#ADD} and {@link BfInstruction#SET}
+ * is replaced with at most one instruction per cell; additions which cancel out each other, such as {@code +>-<-},
+ * are removed.
+ */
+final class BfCombineUpdatesPass implements BfPass {
+    @Override
+    public String getName() {
+        return "CombineUpdates";
+    }
+
+    @Override
+    public BfIRCode run(BfIRCode ircode) {
+        byte[] opcodes = ircode.getOpcodes();
+        int[] operands1 = ircode.getOperands1();
+        int[] operands2 = ircode.getOperands2();
+        BfIRCode result = new BfIRCode(ircode.size(), ircode.getSourcePositions() != null);
+        // Combined instruction for each cell in order of appearance: {opcode, operand 2, index of the first instruction}
+        LinkedHashMap<Integer, int[]> updates = new LinkedHashMap<>();
+        for (int i = 0; i < ircode.size(); i++) {
+            byte opcode = opcodes[i];
+            if (opcode != BfInstruction.ADD && opcode != BfInstruction.SET) {
+                flush(ircode, updates, result);
+                result.copy(ircode, i);
+                continue;
+            }
+            int[] update = updates.get(operands1[i]);
+            if (update == null) {
+                updates.put(operands1[i], new int[] {opcode, operands2[i], i});
+            } else if (opcode == BfInstruction.SET) {
+                update[0] = BfInstruction.SET;
+                update[1] = operands2[i];
+            } else {
+                update[1] += operands2[i];
+            }
+        }
+        flush(ircode, updates, result);
+        result.linkLoops();
+        result.trim();
+        return result;
+    }
+
+    /**
+     * Emit combined instructions of the current run
+     * @param ircode   Source IR-code
+     * @param updates  Combined instruction for each cell (cleared)
+     * @param result   Destination IR-code
+     */
+    private static void flush(BfIRCode ircode, Map<Integer, int[]> updates, BfIRCode result) {
+        for (Map.Entry<Integer, int[]> entry : updates.entrySet()) {
+            int[] update = entry.getValue();
+            if (update[0] == BfInstruction.ADD && update[1] == 0) {
+                continue;
+            }
+            int index = result.copy(ircode, update[2]);
+            result.set(index, (byte) update[0], entry.getKey(), update[1]);
+        }
+        updates.clear();
+    }
+}
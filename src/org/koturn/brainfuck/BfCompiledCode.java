@@ -0,0 +1,21 @@
+package org.koturn.brainfuck;
+
+import java.io.IOException;
+
+
+/**
+ * Brainfuck program compiled to JVM bytecode by {@link BfJitCompiler}
+ */
+interface BfCompiledCode {
+    /**
+     * Execute compiled brainfuck program
+     * @param tape    Runtime heap
+     * @param hp      Initial heap pointer
+     * @param out     Output destination
+     * @param in      Input source
+     * @param budget  Remaining steps and deadline, whose fuel is consumed from {@link BfBudget#fuel}
+     * @throws IOException  Throw when something error is occured while reading from {@code in} or writing to {@code out}
+     * @throws BfBudgetExhaustedException  Throw when {@code budget} is exhausted
+     */
+    void run(BfTape tape, int hp, BrainfuckOutput out, BrainfuckInput in, BfBudget budget) throws IOException;
+}
@@ -0,0 +1,22 @@
+package org.koturn.brainfuck;
+
+import java.io.IOException;
+
+
+/**
+ * One loop of a brainfuck program compiled to JVM bytecode by {@link BfJitCompiler} during tiered execution
+ */
+interface BfCompiledLoop {
+    /**
+     * Execute the loop from its {@link BfInstruction#LOOP_START} to its {@link BfInstruction#LOOP_END}
+     * @param tape    Runtime heap
+     * @param hp      Heap pointer
+     * @param out     Output destination
+     * @param in      Input source
+     * @param budget  Remaining steps and deadline, whose fuel is handed over through {@link BfBudget#fuel}
+     * @return  Heap pointer after the loop
+     * @throws IOException  Throw when something error is occured while reading from {@code in} or writing to {@code out}
+     * @throws BfBudgetExhaustedException  Throw when {@code budget} is exhausted
+     */
+    int run(BfTape tape, int hp, BrainfuckOutput out, BrainfuckInput in, BfBudget budget) throws IOException;
+}
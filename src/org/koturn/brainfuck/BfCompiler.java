@@ -0,0 +1,344 @@
+package org.koturn.brainfuck;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Streaming compiler from brainfuck source code to IR-code.
+ * Source code is given in arbitrary chunks by {@link #compile(byte[], int, int)} and each byte is translated as soon as it arrives,
+ * so neither the source code nor its commands are kept in memory; only the IR-code and the stack of open loops are.
+ * <p>
+ * Pointer movement in straight-line code is not emitted immediately; the compiler tracks it as a virtual offset,
+ * emits offset-addressed instructions and moves the pointer only once before each loop boundary.
+ * Scan loops such as {@code [>]} and multiply loops such as {@code [->+>+++<<]} are recognized from IR-code
+ * of the loop body when the loop is closed, and the body is replaced with a single instruction.
+ * </p>
+ */
+final class BfCompiler {
+    /**
+     * Initial capacity of the loop stack
+     */
+    private static final int LOOP_STACK_SIZE = 64;
+    /**
+     * Maximum virtual offset folded into offset-addressed instructions.
+     * Interpreters keep cells within the range of folded offsets allocated, so this bounds the margin of the heap.
+     */
+    static final int MAX_FOLDED_OFFSET = 256;
+
+    /**
+     * IR-code being built
+     */
+    private final BfIRCode ircode;
+    /**
+     * Index of {@link BfInstruction#LOOP_START} of each open loop
+     */
+    private int[] loopStack;
+    /**
+     * Virtual offset applied by {@link BfInstruction#NEXT} just before each open loop (0 if no instruction is emitted)
+     */
+    private int[] loopOffsetStack;
+    /**
+     * Source position of {@code '['} of each open loop
+     */
+    private long[] loopPositionStack;
+    /**
+     * The number of open loops
+     */
+    private int sp;
+    /**
+     * Virtual offset of the pointer
+     */
+    private int offset;
+    /**
+     * The last byte of source code (including comments)
+     */
+    private int lastByte;
+    /**
+     * Source position of the first byte of the current run of {@code '>'} or {@code '<'}
+     */
+    private long moveStart;
+    /**
+     * Source position of the next byte
+     */
+    private long position;
+
+    /**
+     * Create a compiler
+     * @param capacity              Initial capacity of IR-code
+     * @param isRecordingPositions  Record source position of each instruction or not
+     */
+    BfCompiler(int capacity, boolean isRecordingPositions) {
+        ircode = new BfIRCode(capacity, isRecordingPositions);
+        loopStack = new int[LOOP_STACK_SIZE];
+        loopOffsetStack = new int[LOOP_STACK_SIZE];
+        loopPositionStack = new long[LOOP_STACK_SIZE];
+        sp = 0;
+        offset = 0;
+        lastByte = -1;
+        position = 0;
+    }
+
+    /**
+     * Compile whole brainfuck source code
+     * @param bfSource  Brainfuck source code
+     * @return  Brainfuck IR-code, which has source position of each instruction
+     * @throws BrainfuckSyntaxException  Throw when brackets are unbalanced
+     */
+    static BfIRCode compile(byte[] bfSource) {
+        BfCompiler compiler = new BfCompiler(bfSource.length >> 1, true);
+        compiler.compile(bfSource, 0, bfSource.length);
+        return compiler.finish();
+    }
+
+    /**
+     * Compile next chunk of source code
+     * @param chunk   Buffer which holds the chunk
+     * @param off     Start index of the chunk in {@code chunk}
+     * @param length  Length of the chunk
+     * @throws BrainfuckSyntaxException  Throw when an unmatched {@code ']'} is found
+     */
+    void compile(byte[] chunk, int off, int length) {
+        for (int i = off; i < off + length; i++, position++) {
+            byte c = chunk[i];
+            if (c != lastByte && (lastByte == '>' || lastByte == '<')) {
+                endMove();
+            }
+            int from = ircode.size();
+            switch (c) {
+                case '+':
+                    emitAdd(offset, 1);
+                    break;
+                case '-':
+                    emitAdd(offset, -1);
+                    break;
+                case '>':
+                    if (lastByte != '>') {
+                        moveStart = position;
+                    }
+                    offset++;
+                    break;
+                case '<':
+                    if (lastByte != '<') {
+                        moveStart = position;
+                    }
+                    offset--;
+                    break;
+                case '.':
+                    ircode.add(BfInstruction.PUTCHAR, offset);
+                    break;
+                case ',':
+                    ircode.add(BfInstruction.GETCHAR, offset);
+                    break;
+                case '[':
+                    openLoop();
+                    break;
+                case ']':
+                    closeLoop();
+                    // closeLoop() records source positions by itself
+                    from = ircode.size();
+                    break;
+            }
+            ircode.setSourcePosition(from, toSourcePosition(position));
+            lastByte = c;
+        }
+    }
+
+    /**
+     * Finish compilation
+     * @return  Brainfuck IR-code
+     * @throws BrainfuckSyntaxException  Throw when an unmatched {@code '['} is found
+     */
+    BfIRCode finish() {
+        if (lastByte == '>' || lastByte == '<') {
+            endMove();
+        }
+        if (sp > 0) {
+            throw new BrainfuckSyntaxException("Unmatched '['", loopPositionStack[sp - 1]);
+        }
+        ircode.trim();
+        return ircode;
+    }
+
+    /**
+     * Handle the end of a run of {@code '>'} or {@code '<'}
+     */
+    private void endMove() {
+        if (Math.abs(offset) > MAX_FOLDED_OFFSET) {
+            int from = ircode.size();
+            offset = emitNext(offset);
+            ircode.setSourcePosition(from, toSourcePosition(moveStart));
+        }
+    }
+
+    /**
+     * Handle {@code '['}
+     */
+    private void openLoop() {
+        if (sp == loopStack.length) {
+            loopStack = Arrays.copyOf(loopStack, sp << 1);
+            loopOffsetStack = Arrays.copyOf(loopOffsetStack, sp << 1);
+            loopPositionStack = Arrays.copyOf(loopPositionStack, sp << 1);
+        }
+        loopOffsetStack[sp] = offset;
+        loopPositionStack[sp] = position;
+        offset = emitNext(offset);
+        loopStack[sp++] = ircode.add(BfInstruction.LOOP_START);
+    }
+
+    /**
+     * Handle {@code ']'}, replacing the loop with a scan or multiply instruction if possible.
+     * Instructions which replace the loop have the source position of {@code '['}.
+     * @throws BrainfuckSyntaxException  Throw when there is no matching {@code '['}
+     */
+    private void closeLoop() {
+        if (sp == 0) {
+            throw new BrainfuckSyntaxException("Unmatched ']'", position);
+        }
+        int loopStartIdx = loopStack[--sp];
+        int stride = countScanLoopStride(loopStartIdx);
+        if (stride != 0) {
+            ircode.truncate(loopStartIdx);
+            ircode.add(stride > 0 ? BfInstruction.SCAN_RIGHT : BfInstruction.SCAN_LEFT, Math.abs(stride));
+            ircode.setSourcePosition(loopStartIdx, toSourcePosition(loopPositionStack[sp]));
+            offset = 0;
+            return;
+        }
+        TreeMap<Integer, Integer> factors = new TreeMap<>();
+        if (parseMulAddLoop(loopStartIdx, factors)) {
+            // Undo the pointer movement emitted before the loop because a multiply loop may not need it
+            int from = loopOffsetStack[sp] == 0 ? loopStartIdx : loopStartIdx - 1;
+            ircode.truncate(from);
+            offset = loopOffsetStack[sp];
+            if (!factors.isEmpty()) {
+                offset = emitNext(offset);
+                for (Map.Entry<Integer, Integer> entry : factors.entrySet()) {
+                    ircode.add(BfInstruction.MUL_ADD, entry.getKey(), entry.getValue());
+                }
+            }
+            emitSet(offset, 0);
+            ircode.setSourcePosition(from, toSourcePosition(loopPositionStack[sp]));
+            return;
+        }
+        int from = ircode.size();
+        offset = emitNext(offset);
+        ircode.setOperand1(loopStartIdx, ircode.size());
+        ircode.add(BfInstruction.LOOP_END, loopStartIdx);
+        ircode.setSourcePosition(from, toSourcePosition(position));
+    }
+
+    /**
+     * Check whether a loop is a scan loop such as {@code [>]}, {@code [<<]} or {@code [>>>>]}.
+     * A loop is a scan loop if its body consists of only pointer movement.
+     * @param loopStartIdx  Index of {@link BfInstruction#LOOP_START} of the loop
+     * @return  Pointer movement per iteration (negative value means left), or zero if the loop is not a scan loop
+     */
+    private int countScanLoopStride(int loopStartIdx) {
+        byte[] opcodes = ircode.getOpcodes();
+        int[] operands1 = ircode.getOperands1();
+        long stride = offset;
+        for (int i = loopStartIdx + 1; i < ircode.size(); i++) {
+            if (opcodes[i] != BfInstruction.NEXT) {
+                return 0;
+            }
+            stride += operands1[i];
+        }
+        return stride < Integer.MIN_VALUE + 1 || stride > Integer.MAX_VALUE ? 0 : (int) stride;
+    }
+
+    /**
+     * Parse a multiply loop such as {@code [->+>+++<<]}.
+     * A loop is a multiply loop if its body consists of only {@link BfInstruction#ADD} and {@link BfInstruction#NEXT},
+     * its net pointer movement is zero and the counter cell is decremented or incremented by one per iteration.
+     * @param loopStartIdx  Index of {@link BfInstruction#LOOP_START} of the loop
+     * @param factors       Map from offset of each target cell to its multiplication factor (output)
+     * @return  {@code true} if the loop is a multiply loop, otherwise {@code false}
+     */
+    private boolean parseMulAddLoop(int loopStartIdx, Map<Integer, Integer> factors) {
+        byte[] opcodes = ircode.getOpcodes();
+        int[] operands1 = ircode.getOperands1();
+        int[] operands2 = ircode.getOperands2();
+        TreeMap<Integer, Integer> deltas = new TreeMap<>();
+        int base = 0;
+        for (int i = loopStartIdx + 1; i < ircode.size(); i++) {
+            switch (opcodes[i]) {
+                case BfInstruction.ADD:
+                    deltas.merge(base + operands1[i], operands2[i], Integer::sum);
+                    break;
+                case BfInstruction.NEXT:
+                    base += operands1[i];
+                    break;
+                default:
+                    return false;
+            }
+        }
+        Integer counterDelta = deltas.remove(0);
+        if (base + offset != 0 || counterDelta == null || (counterDelta != -1 && counterDelta != 1)) {
+            return false;
+        }
+        // When the counter is incremented, the loop is iterated (-counter) times (mod cell size)
+        int sign = -counterDelta;
+        for (Map.Entry<Integer, Integer> entry : deltas.entrySet()) {
+            if (entry.getValue() != 0) {
+                factors.put(entry.getKey(), sign * entry.getValue());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Emit {@link BfInstruction#ADD}, or merge it into the last instruction if it modifies the same cell
+     * @param offset  Offset of the target cell
+     * @param value   Value to add
+     */
+    private void emitAdd(int offset, int value) {
+        int last = ircode.size() - 1;
+        if (last >= 0 && ircode.getOperands1()[last] == offset) {
+            byte opcode = ircode.getOpcodes()[last];
+            if (opcode == BfInstruction.ADD || opcode == BfInstruction.SET) {
+                ircode.setOperand2(last, ircode.getOperands2()[last] + value);
+                return;
+            }
+        }
+        ircode.add(BfInstruction.ADD, offset, value);
+    }
+
+    /**
+     * Emit {@link BfInstruction#SET}, or overwrite the last instruction if it modifies the same cell
+     * @param offset  Offset of the target cell
+     * @param value   Value to assign
+     */
+    private void emitSet(int offset, int value) {
+        int last = ircode.size() - 1;
+        if (last >= 0 && ircode.getOperands1()[last] == offset) {
+            byte opcode = ircode.getOpcodes()[last];
+            if (opcode == BfInstruction.ADD || opcode == BfInstruction.SET) {
+                ircode.set(last, BfInstruction.SET, offset, value);
+                return;
+            }
+        }
+        ircode.add(BfInstruction.SET, offset, value);
+    }
+
+    /**
+     * Emit {@link BfInstruction#NEXT} which applies the virtual offset to the pointer
+     * @param offset  Virtual offset
+     * @return  New virtual offset (always zero)
+     */
+    private int emitNext(int offset) {
+        if (offset != 0) {
+            ircode.add(BfInstruction.NEXT, offset);
+        }
+        return 0;
+    }
+
+    /**
+     * Convert a source position to the value recorded in IR-code
+     * @param position  Source position
+     * @return  {@code position}, or {@link Integer#MAX_VALUE} if it doesn't fit in {@code int}
+     */
+    private static int toSourcePosition(long position) {
+        return (int) Math.min(position, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,157 @@
+package org.koturn.brainfuck;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Pass which removes instructions whose effect is known to be nothing by tracking known cell values.
+ * All cells are zero at the beginning of the program and the current cell is zero after each loop, so this pass removes
+ * <ul>
+ *   <li>loops, scans and multiplications reached when the current cell is known to be zero
+ *       (e.g. comment loops at the beginning of the program and {@code [-]} right after another loop)</li>
+ *   <li>assignments of the value which the cell already has</li>
+ * </ul>
+ * Only values from -128 to 127 are tracked, so that the analysis holds for every cell width.
+ */
+final class BfDeadCodePass implements BfPass {
+    /**
+     * Minimum value which is tracked
+     */
+    private static final long MIN_TRACKED_VALUE = Byte.MIN_VALUE;
+    /**
+     * Maximum value which is tracked
+     */
+    private static final long MAX_TRACKED_VALUE = Byte.MAX_VALUE;
+
+    @Override
+    public String getName() {
+        return "DeadCode";
+    }
+
+    @Override
+    public BfIRCode run(BfIRCode ircode) {
+        byte[] opcodes = ircode.getOpcodes();
+        int[] operands1 = ircode.getOperands1();
+        int[] operands2 = ircode.getOperands2();
+        BfIRCode result = new BfIRCode(ircode.size(), ircode.getSourcePositions() != null);
+        // Values of cells relative to the pointer position at the last reset ({@code null} value means unknown)
+        HashMap<Integer, Integer> cells = new HashMap<>();
+        // Pointer position relative to the position at the last reset
+        int base = 0;
+        // Whether cells which are not in {@code cells} are zero or unknown
+        boolean isRestZero = true;
+        for (int i = 0; i < ircode.size(); i++) {
+            switch (opcodes[i]) {
+                case BfInstruction.ADD:
+                    {
+                        Integer value = lookup(cells, isRestZero, base + operands1[i]);
+                        store(cells, base + operands1[i], value == null ? null : (long) value + operands2[i]);
+                        result.copy(ircode, i);
+                    }
+                    break;
+                case BfInstruction.SET:
+                    {
+                        Integer value = lookup(cells, isRestZero, base + operands1[i]);
+                        if (value == null || value != operands2[i]) {
+                            store(cells, base + operands1[i], (long) operands2[i]);
+                            result.copy(ircode, i);
+                        }
+                    }
+                    break;
+                case BfInstruction.NEXT:
+                    base += operands1[i];
+                    result.copy(ircode, i);
+                    break;
+                case BfInstruction.PUTCHAR:
+                    result.copy(ircode, i);
+                    break;
+                case BfInstruction.GETCHAR:
+                    cells.put(base + operands1[i], null);
+                    result.copy(ircode, i);
+                    break;
+                case BfInstruction.MUL_ADD:
+                    {
+                        Integer counter = lookup(cells, isRestZero, base);
+                        if (counter != null && counter == 0) {
+                            break;
+                        }
+                        Integer value = lookup(cells, isRestZero, base + operands1[i]);
+                        store(cells, base + operands1[i], counter == null || value == null ? null : value + (long) counter * operands2[i]);
+                        result.copy(ircode, i);
+                    }
+                    break;
+                case BfInstruction.SCAN_RIGHT:
+                case BfInstruction.SCAN_LEFT:
+                    {
+                        Integer counter = lookup(cells, isRestZero, base);
+                        if (counter != null && counter == 0) {
+                            break;
+                        }
+                        // The pointer moves by unknown distance
+                        cells.clear();
+                        cells.put(0, 0);
+                        base = 0;
+                        isRestZero = false;
+                        result.copy(ircode, i);
+                    }
+                    break;
+                case BfInstruction.LOOP_START:
+                    {
+                        Integer counter = lookup(cells, isRestZero, base);
+                        if (counter != null && counter == 0) {
+                            // The loop is never executed
+                            i = operands1[i];
+                            break;
+                        }
+                        // The body is also reached from the end of the loop, where nothing is known
+                        cells.clear();
+                        base = 0;
+                        isRestZero = false;
+                        result.copy(ircode, i);
+                    }
+                    break;
+                case BfInstruction.LOOP_END:
+                    cells.clear();
+                    cells.put(0, 0);
+                    base = 0;
+                    isRestZero = false;
+                    result.copy(ircode, i);
+                    break;
+                default:
+                    result.copy(ircode, i);
+            }
+        }
+        result.linkLoops();
+        result.trim();
+        return result;
+    }
+
+    /**
+     * Get known value of a cell
+     * @param cells       Known values of cells
+     * @param isRestZero  Whether cells which are not in {@code cells} are zero or unknown
+     * @param offset      Position of the cell
+     * @return  Value of the cell, or {@code null} if it is unknown
+     */
+    private static Integer lookup(Map<Integer, Integer> cells, boolean isRestZero, int offset) {
+        if (cells.containsKey(offset)) {
+            return cells.get(offset);
+        }
+        return isRestZero ? Integer.valueOf(0) : null;
+    }
+
+    /**
+     * Record value of a cell
+     * @param cells   Known values of cells
+     * @param offset  Position of the cell
+     * @param value   Value of the cell ({@code null} if it is unknown); values out of the tracked range are treated as unknown
+     */
+    private static void store(Map<Integer, Integer> cells, int offset, Long value) {
+        if (value == null || value < MIN_TRACKED_VALUE || value > MAX_TRACKED_VALUE) {
+            cells.put(offset, null);
+        } else {
+            cells.put(offset, (int) (long) value);
+        }
+    }
+}
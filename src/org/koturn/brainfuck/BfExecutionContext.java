@@ -0,0 +1,946 @@
+package org.koturn.brainfuck;
+
+import java.io.IOException;
+
+
+/**
+ * State of one execution of a brainfuck program.
+ * A context owns the runtime heap and the input and output of the execution, so programs are never modified
+ * while they are executed and one program can be executed on many threads, each of which has its own context.
+ * The heap pointer is kept in a local variable of each interpreter loop.
+ * Every back-edge of a loop consumes fuel of {@link BfBudget}, which is also kept in a local variable
+ * and is written back to the budget only when the execution moves to compiled code or another interpreter loop.
+ */
+final class BfExecutionContext {
+    /**
+     * Runtime heap
+     */
+    private final BfTape tape;
+    /**
+     * Bit width of each cell (8, 16 or 32)
+     */
+    private final int cellBits;
+    /**
+     * Output destination
+     */
+    private final BrainfuckOutput out;
+    /**
+     * Input source
+     */
+    private final BrainfuckInput in;
+    /**
+     * Remaining steps and deadline of the execution
+     */
+    private final BfBudget budget;
+
+    /**
+     * Create a context with an empty heap
+     * @param heapSize  Maximum runtime heap size
+     * @param cellBits  Bit width of each cell (8, 16 or 32)
+     * @param out       Output destination
+     * @param in        Input source
+     * @param budget    Remaining steps and deadline of the execution
+     */
+    BfExecutionContext(int heapSize, int cellBits, BrainfuckOutput out, BrainfuckInput in, BfBudget budget) {
+        this.tape = new BfTape(heapSize, cellBits);
+        this.cellBits = cellBits;
+        this.out = out;
+        this.in = in;
+        this.budget = budget;
+    }
+
+    /**
+     * Execute brainfuck source code directly
+     * @param bfSource   Brainfuck source code
+     * @param jumpTable  Index of the matching bracket for each bracket in {@code bfSource}
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     */
+    void runNormal(byte[] bfSource, int[] jumpTable) throws IOException {
+        switch (cellBits) {
+            case 16:
+                runNormalShort(bfSource, jumpTable);
+                break;
+            case 32:
+                runNormalInt(bfSource, jumpTable);
+                break;
+            default:
+                runNormalByte(bfSource, jumpTable);
+        }
+    }
+
+    /**
+     * Execute brainfuck source code directly with 8-bit cells
+     * @param bfSource   Brainfuck source code
+     * @param jumpTable  Index of the matching bracket for each bracket in {@code bfSource}
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     */
+    private void runNormalByte(byte[] bfSource, int[] jumpTable) throws IOException {
+        byte[] heap = tape.getByteCells();
+        int hp = 0;
+        int fuel = budget.fuel;
+        for (int pc = 0; pc < bfSource.length; pc++) {
+            switch (bfSource[pc]) {
+                case '+':
+                    heap[hp]++;
+                    break;
+                case '-':
+                    heap[hp]--;
+                    break;
+                case '>':
+                    if (++hp == heap.length) {
+                        hp = tape.reserve(hp, 0, 0);
+                        heap = tape.getByteCells();
+                    }
+                    break;
+                case '<':
+                    if (--hp < 0) {
+                        hp = tape.reserve(hp, 0, 0);
+                        heap = tape.getByteCells();
+                    }
+                    break;
+                case '.':
+                    out.write(heap[hp]);
+                    break;
+                case ',':
+                    heap[hp] = (byte) in.read();
+                    break;
+                case '[':
+                    if (heap[hp] == 0) {
+                        pc = jumpTable[pc];
+                    }
+                    break;
+                case ']':
+                    if (heap[hp] != 0) {
+                        if (--fuel < 0) {
+                            fuel = budget.refill();
+                        }
+                        pc = jumpTable[pc];
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Execute brainfuck source code directly with 16-bit cells
+     * @param bfSource   Brainfuck source code
+     * @param jumpTable  Index of the matching bracket for each bracket in {@code bfSource}
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     */
+    private void runNormalShort(byte[] bfSource, int[] jumpTable) throws IOException {
+        short[] heap = tape.getShortCells();
+        int hp = 0;
+        int fuel = budget.fuel;
+        for (int pc = 0; pc < bfSource.length; pc++) {
+            switch (bfSource[pc]) {
+                case '+':
+                    heap[hp]++;
+                    break;
+                case '-':
+                    heap[hp]--;
+                    break;
+                case '>':
+                    if (++hp == heap.length) {
+                        hp = tape.reserve(hp, 0, 0);
+                        heap = tape.getShortCells();
+                    }
+                    break;
+                case '<':
+                    if (--hp < 0) {
+                        hp = tape.reserve(hp, 0, 0);
+                        heap = tape.getShortCells();
+                    }
+                    break;
+                case '.':
+                    out.write(heap[hp]);
+                    break;
+                case ',':
+                    heap[hp] = (short) in.read();
+                    break;
+                case '[':
+                    if (heap[hp] == 0) {
+                        pc = jumpTable[pc];
+                    }
+                    break;
+                case ']':
+                    if (heap[hp] != 0) {
+                        if (--fuel < 0) {
+                            fuel = budget.refill();
+                        }
+                        pc = jumpTable[pc];
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Execute brainfuck source code directly with 32-bit cells
+     * @param bfSource   Brainfuck source code
+     * @param jumpTable  Index of the matching bracket for each bracket in {@code bfSource}
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     */
+    private void runNormalInt(byte[] bfSource, int[] jumpTable) throws IOException {
+        int[] heap = tape.getIntCells();
+        int hp = 0;
+        int fuel = budget.fuel;
+        for (int pc = 0; pc < bfSource.length; pc++) {
+            switch (bfSource[pc]) {
+                case '+':
+                    heap[hp]++;
+                    break;
+                case '-':
+                    heap[hp]--;
+                    break;
+                case '>':
+                    if (++hp == heap.length) {
+                        hp = tape.reserve(hp, 0, 0);
+                        heap = tape.getIntCells();
+                    }
+                    break;
+                case '<':
+                    if (--hp < 0) {
+                        hp = tape.reserve(hp, 0, 0);
+                        heap = tape.getIntCells();
+                    }
+                    break;
+                case '.':
+                    out.write(heap[hp]);
+                    break;
+                case ',':
+                    heap[hp] = in.read();
+                    break;
+                case '[':
+                    if (heap[hp] == 0) {
+                        pc = jumpTable[pc];
+                    }
+                    break;
+                case ']':
+                    if (heap[hp] != 0) {
+                        if (--fuel < 0) {
+                            fuel = budget.refill();
+                        }
+                        pc = jumpTable[pc];
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Execute IR-code.
+     * Each cell width has its own interpreter loop, so that every heap access is monomorphic.
+     * If cells of the first segment inferred by {@link BfTapeBounds} fit in the heap, the guarded opcodes are executed,
+     * which check the heap only at guards, otherwise every movement is checked.
+     * @param ircode  Brainfuck IR-code
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     */
+    void runIR(BfIRCode ircode) throws IOException {
+        runIR(ircode, null);
+    }
+
+    /**
+     * Execute IR-code with tiered execution.
+     * Back-edges of each loop are counted, and once a loop exceeds {@link BfTieredCode#COMPILE_THRESHOLD},
+     * the loop is compiled to JVM bytecode and the rest of the loop runs in the compiled code
+     * with the heap and the heap pointer handed over.
+     * @param tiered  IR-code and its compiled loops
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     */
+    void runTiered(BfTieredCode tiered) throws IOException {
+        runIR(tiered.getIRCode(), tiered);
+    }
+
+    /**
+     * Execute IR-code with the interpreter loop of the cell width
+     * @param ircode  Brainfuck IR-code
+     * @param tiered  Compiled loops of {@code ircode} ({@code null} to interpret all loops)
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     */
+    private void runIR(BfIRCode ircode, BfTieredCode tiered) throws IOException {
+        byte[] opcodes;
+        int hp;
+        if (tiered == null && ircode.getGuardedOpcodes() != null
+                && tape.canReserve(0, ircode.getEntryMinOffset(), ircode.getEntryMaxOffset())) {
+            // Cells of the first segment fit in the heap, so movements are checked only by guards
+            opcodes = ircode.getGuardedOpcodes();
+            hp = tape.reserve(0, ircode.getEntryMinOffset(), ircode.getEntryMaxOffset());
+        } else {
+            // Superinstructions are not used in tiered execution, whose compiled loops handle hot code
+            opcodes = tiered == null ? ircode.getDispatchOpcodes() : ircode.getOpcodes();
+            hp = tape.reserve(0, ircode.getMinOffset(), ircode.getMaxOffset());
+        }
+        try {
+            switch (cellBits) {
+                case 16:
+                    runIRShort(ircode, tiered, opcodes, 0, hp);
+                    break;
+                case 32:
+                    runIRInt(ircode, tiered, opcodes, 0, hp);
+                    break;
+                default:
+                    runIRByte(ircode, tiered, opcodes, 0, hp);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // The heap is clamped to the maximum size and an access went out of it
+            throw tape.toOverflow(e);
+        }
+    }
+
+    /**
+     * Execute IR-code with 8-bit cells.
+     * Each superinstruction executes its first instruction and falls through to the case of its second instruction.
+     * @param ircode   Brainfuck IR-code
+     * @param tiered   Compiled loops of {@code ircode} ({@code null} to interpret all loops)
+     * @param opcodes  Opcodes to execute (dispatch opcodes, guarded opcodes or canonical opcodes of {@code ircode})
+     * @param pc       Index of the first instruction to execute
+     * @param hp       Heap pointer
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     */
+    @SuppressWarnings("fallthrough")
+    private void runIRByte(BfIRCode ircode, BfTieredCode tiered, byte[] opcodes, int pc, int hp) throws IOException {
+        // Keep the invariant that cells from hp + minOffset to hp + maxOffset are allocated unless the heap is clamped
+        int minOffset = ircode.getMinOffset();
+        int maxOffset = ircode.getMaxOffset();
+        int[] guardMinOffsets = ircode.getGuardMinOffsets();
+        int[] guardMaxOffsets = ircode.getGuardMaxOffsets();
+        byte[] heap = tape.getByteCells();
+        int[] operands1 = ircode.getOperands1();
+        int[] operands2 = ircode.getOperands2();
+        byte[] data = ircode.getData();
+        // The number of back-edges taken at each LoopEnd
+        int[] backEdges = tiered == null ? null : new int[opcodes.length];
+        int fuel = budget.fuel;
+        for (; pc < opcodes.length; pc++) {
+            switch (opcodes[pc]) {
+                case BfInstruction.ADD_MOVE:
+                    heap[hp + operands1[pc]] += operands2[pc];
+                    pc++;
+                    // fall through
+                case BfInstruction.MOVE:
+                    hp += operands1[pc];
+                    break;
+                case BfInstruction.ADD:
+                    heap[hp + operands1[pc]] += operands2[pc];
+                    break;
+                case BfInstruction.MUL_ADD_SET:
+                    heap[hp + operands1[pc]] += heap[hp] * operands2[pc];
+                    pc++;
+                    // fall through
+                case BfInstruction.SET:
+                    heap[hp + operands1[pc]] = (byte) operands2[pc];
+                    break;
+                case BfInstruction.SET_MOVE:
+                    heap[hp + operands1[pc]] = (byte) operands2[pc];
+                    pc++;
+                    hp += operands1[pc];
+                    break;
+                case BfInstruction.NEXT:
+                    hp += operands1[pc];
+                    if (hp + minOffset < 0 || hp + maxOffset >= heap.length) {
+                        hp = tape.reserve(hp, minOffset, maxOffset);
+                        heap = tape.getByteCells();
+                    }
+                    break;
+                case BfInstruction.PUTCHAR:
+                    out.write(heap[hp + operands1[pc]]);
+                    break;
+                case BfInstruction.GETCHAR:
+                    heap[hp + operands1[pc]] = (byte) in.read();
+                    break;
+                case BfInstruction.MOVE_LOOP_START:
+                    hp += operands1[pc];
+                    pc++;
+                    // fall through
+                case BfInstruction.LOOP_START:
+                    if (heap[hp] == 0) {
+                        pc = operands1[pc];
+                    }
+                    break;
+                case BfInstruction.MOVE_LOOP_END:
+                    hp += operands1[pc];
+                    pc++;
+                    if (heap[hp] != 0) {
+                        if (--fuel < 0) {
+                            fuel = budget.refill();
+                        }
+                        pc = operands1[pc];
+                    }
+                    break;
+                case BfInstruction.ADD_LOOP_END:
+                    heap[hp + operands1[pc]] += operands2[pc];
+                    pc++;
+                    if (heap[hp] != 0) {
+                        if (--fuel < 0) {
+                            fuel = budget.refill();
+                        }
+                        pc = operands1[pc];
+                    }
+                    break;
+                case BfInstruction.LOOP_END_MOVE:
+                    if (heap[hp] != 0) {
+                        if (--fuel < 0) {
+                            fuel = budget.refill();
+                        }
+                        pc = operands1[pc];
+                    } else {
+                        pc++;
+                        hp += operands1[pc];
+                    }
+                    break;
+                case BfInstruction.GUARDED_LOOP_END:
+                    if (hp + guardMinOffsets[pc] < 0 || hp + guardMaxOffsets[pc] >= heap.length) {
+                        if (!tape.canReserve(hp, guardMinOffsets[pc], guardMaxOffsets[pc])) {
+                            // Execute the rest checking every movement, so that the overflow is reported only when it occurs
+                            budget.fuel = fuel;
+                            runIRByte(ircode, null, ircode.getDispatchOpcodes(), pc, tape.reserve(hp, minOffset, maxOffset));
+                            return;
+                        }
+                        hp = tape.reserve(hp, guardMinOffsets[pc], guardMaxOffsets[pc]);
+                        heap = tape.getByteCells();
+                    }
+                    // fall through
+                case BfInstruction.LOOP_END:
+                    if (heap[hp] != 0) {
+                        if (--fuel < 0) {
+                            fuel = budget.refill();
+                        }
+                        if (backEdges != null && ++backEdges[pc] > BfTieredCode.COMPILE_THRESHOLD) {
+                            BfCompiledLoop loop = tiered.getLoop(pc);
+                            if (loop != null) {
+                                backEdges[pc] = BfTieredCode.COMPILE_THRESHOLD;
+                                budget.fuel = fuel;
+                                hp = loop.run(tape, hp, out, in, budget);
+                                fuel = budget.fuel;
+                                heap = tape.getByteCells();
+                                break;
+                            }
+                            // Never try again
+                            backEdges[pc] = Integer.MIN_VALUE;
+                        }
+                        pc = operands1[pc];
+                    }
+                    break;
+                case BfInstruction.MUL_ADD:
+                    heap[hp + operands1[pc]] += heap[hp] * operands2[pc];
+                    break;
+                case BfInstruction.SCAN_RIGHT:
+                    hp = BfTapeScanner.scanRight(heap, hp, operands1[pc]);
+                    if (hp + maxOffset >= heap.length) {
+                        hp = tape.reserve(hp, minOffset, maxOffset);
+                        heap = tape.getByteCells();
+                    }
+                    break;
+                case BfInstruction.SCAN_LEFT:
+                    hp = BfTapeScanner.scanLeft(heap, hp, operands1[pc]);
+                    if (hp + minOffset < 0) {
+                        hp = tape.reserve(hp, minOffset, maxOffset);
+                        heap = tape.getByteCells();
+                    }
+                    break;
+                case BfInstruction.GUARDED_SCAN_RIGHT:
+                    hp = BfTapeScanner.scanRight(heap, hp, operands1[pc]);
+                    if (hp + guardMinOffsets[pc] < 0 || hp + guardMaxOffsets[pc] >= heap.length) {
+                        if (!tape.canReserve(hp, guardMinOffsets[pc], guardMaxOffsets[pc])) {
+                            // Execute the rest checking every movement, so that the overflow is reported only when it occurs
+                            budget.fuel = fuel;
+                            runIRByte(ircode, null, ircode.getDispatchOpcodes(), pc, tape.reserve(hp, minOffset, maxOffset));
+                            return;
+                        }
+                        hp = tape.reserve(hp, guardMinOffsets[pc], guardMaxOffsets[pc]);
+                        heap = tape.getByteCells();
+                    }
+                    break;
+                case BfInstruction.GUARDED_SCAN_LEFT:
+                    hp = BfTapeScanner.scanLeft(heap, hp, operands1[pc]);
+                    if (hp + guardMinOffsets[pc] < 0 || hp + guardMaxOffsets[pc] >= heap.length) {
+                        if (!tape.canReserve(hp, guardMinOffsets[pc], guardMaxOffsets[pc])) {
+                            // Execute the rest checking every movement, so that the overflow is reported only when it occurs
+                            budget.fuel = fuel;
+                            runIRByte(ircode, null, ircode.getDispatchOpcodes(), pc, tape.reserve(hp, minOffset, maxOffset));
+                            return;
+                        }
+                        hp = tape.reserve(hp, guardMinOffsets[pc], guardMaxOffsets[pc]);
+                        heap = tape.getByteCells();
+                    }
+                    break;
+                case BfInstruction.WRITE:
+                    out.write(data, operands1[pc], operands2[pc]);
+                    break;
+                default:
+            }
+        }
+    }
+
+    /**
+     * Execute IR-code with 16-bit cells.
+     * Each superinstruction executes its first instruction and falls through to the case of its second instruction.
+     * @param ircode   Brainfuck IR-code
+     * @param tiered   Compiled loops of {@code ircode} ({@code null} to interpret all loops)
+     * @param opcodes  Opcodes to execute (dispatch opcodes, guarded opcodes or canonical opcodes of {@code ircode})
+     * @param pc       Index of the first instruction to execute
+     * @param hp       Heap pointer
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     */
+    @SuppressWarnings("fallthrough")
+    private void runIRShort(BfIRCode ircode, BfTieredCode tiered, byte[] opcodes, int pc, int hp) throws IOException {
+        // Keep the invariant that cells from hp + minOffset to hp + maxOffset are allocated unless the heap is clamped
+        int minOffset = ircode.getMinOffset();
+        int maxOffset = ircode.getMaxOffset();
+        int[] guardMinOffsets = ircode.getGuardMinOffsets();
+        int[] guardMaxOffsets = ircode.getGuardMaxOffsets();
+        short[] heap = tape.getShortCells();
+        int[] operands1 = ircode.getOperands1();
+        int[] operands2 = ircode.getOperands2();
+        byte[] data = ircode.getData();
+        // The number of back-edges taken at each LoopEnd
+        int[] backEdges = tiered == null ? null : new int[opcodes.length];
+        int fuel = budget.fuel;
+        for (; pc < opcodes.length; pc++) {
+            switch (opcodes[pc]) {
+                case BfInstruction.ADD_MOVE:
+                    heap[hp + operands1[pc]] += operands2[pc];
+                    pc++;
+                    // fall through
+                case BfInstruction.MOVE:
+                    hp += operands1[pc];
+                    break;
+                case BfInstruction.ADD:
+                    heap[hp + operands1[pc]] += operands2[pc];
+                    break;
+                case BfInstruction.MUL_ADD_SET:
+                    heap[hp + operands1[pc]] += heap[hp] * operands2[pc];
+                    pc++;
+                    // fall through
+                case BfInstruction.SET:
+                    heap[hp + operands1[pc]] = (short) operands2[pc];
+                    break;
+                case BfInstruction.SET_MOVE:
+                    heap[hp + operands1[pc]] = (short) operands2[pc];
+                    pc++;
+                    hp += operands1[pc];
+                    break;
+                case BfInstruction.NEXT:
+                    hp += operands1[pc];
+                    if (hp + minOffset < 0 || hp + maxOffset >= heap.length) {
+                        hp = tape.reserve(hp, minOffset, maxOffset);
+                        heap = tape.getShortCells();
+                    }
+                    break;
+                case BfInstruction.PUTCHAR:
+                    out.write(heap[hp + operands1[pc]]);
+                    break;
+                case BfInstruction.GETCHAR:
+                    heap[hp + operands1[pc]] = (short) in.read();
+                    break;
+                case BfInstruction.MOVE_LOOP_START:
+                    hp += operands1[pc];
+                    pc++;
+                    // fall through
+                case BfInstruction.LOOP_START:
+                    if (heap[hp] == 0) {
+                        pc = operands1[pc];
+                    }
+                    break;
+                case BfInstruction.MOVE_LOOP_END:
+                    hp += operands1[pc];
+                    pc++;
+                    if (heap[hp] != 0) {
+                        if (--fuel < 0) {
+                            fuel = budget.refill();
+                        }
+                        pc = operands1[pc];
+                    }
+                    break;
+                case BfInstruction.ADD_LOOP_END:
+                    heap[hp + operands1[pc]] += operands2[pc];
+                    pc++;
+                    if (heap[hp] != 0) {
+                        if (--fuel < 0) {
+                            fuel = budget.refill();
+                        }
+                        pc = operands1[pc];
+                    }
+                    break;
+                case BfInstruction.LOOP_END_MOVE:
+                    if (heap[hp] != 0) {
+                        if (--fuel < 0) {
+                            fuel = budget.refill();
+                        }
+                        pc = operands1[pc];
+                    } else {
+                        pc++;
+                        hp += operands1[pc];
+                    }
+                    break;
+                case BfInstruction.GUARDED_LOOP_END:
+                    if (hp + guardMinOffsets[pc] < 0 || hp + guardMaxOffsets[pc] >= heap.length) {
+                        if (!tape.canReserve(hp, guardMinOffsets[pc], guardMaxOffsets[pc])) {
+                            // Execute the rest checking every movement, so that the overflow is reported only when it occurs
+                            budget.fuel = fuel;
+                            runIRShort(ircode, null, ircode.getDispatchOpcodes(), pc, tape.reserve(hp, minOffset, maxOffset));
+                            return;
+                        }
+                        hp = tape.reserve(hp, guardMinOffsets[pc], guardMaxOffsets[pc]);
+                        heap = tape.getShortCells();
+                    }
+                    // fall through
+                case BfInstruction.LOOP_END:
+                    if (heap[hp] != 0) {
+                        if (--fuel < 0) {
+                            fuel = budget.refill();
+                        }
+                        if (backEdges != null && ++backEdges[pc] > BfTieredCode.COMPILE_THRESHOLD) {
+                            BfCompiledLoop loop = tiered.getLoop(pc);
+                            if (loop != null) {
+                                backEdges[pc] = BfTieredCode.COMPILE_THRESHOLD;
+                                budget.fuel = fuel;
+                                hp = loop.run(tape, hp, out, in, budget);
+                                fuel = budget.fuel;
+                                heap = tape.getShortCells();
+                                break;
+                            }
+                            // Never try again
+                            backEdges[pc] = Integer.MIN_VALUE;
+                        }
+                        pc = operands1[pc];
+                    }
+                    break;
+                case BfInstruction.MUL_ADD:
+                    heap[hp + operands1[pc]] += heap[hp] * operands2[pc];
+                    break;
+                case BfInstruction.SCAN_RIGHT:
+                    hp = BfTapeScanner.scanRight(heap, hp, operands1[pc]);
+                    if (hp + maxOffset >= heap.length) {
+                        hp = tape.reserve(hp, minOffset, maxOffset);
+                        heap = tape.getShortCells();
+                    }
+                    break;
+                case BfInstruction.SCAN_LEFT:
+                    hp = BfTapeScanner.scanLeft(heap, hp, operands1[pc]);
+                    if (hp + minOffset < 0) {
+                        hp = tape.reserve(hp, minOffset, maxOffset);
+                        heap = tape.getShortCells();
+                    }
+                    break;
+                case BfInstruction.GUARDED_SCAN_RIGHT:
+                    hp = BfTapeScanner.scanRight(heap, hp, operands1[pc]);
+                    if (hp + guardMinOffsets[pc] < 0 || hp + guardMaxOffsets[pc] >= heap.length) {
+                        if (!tape.canReserve(hp, guardMinOffsets[pc], guardMaxOffsets[pc])) {
+                            // Execute the rest checking every movement, so that the overflow is reported only when it occurs
+                            budget.fuel = fuel;
+                            runIRShort(ircode, null, ircode.getDispatchOpcodes(), pc, tape.reserve(hp, minOffset, maxOffset));
+                            return;
+                        }
+                        hp = tape.reserve(hp, guardMinOffsets[pc], guardMaxOffsets[pc]);
+                        heap = tape.getShortCells();
+                    }
+                    break;
+                case BfInstruction.GUARDED_SCAN_LEFT:
+                    hp = BfTapeScanner.scanLeft(heap, hp, operands1[pc]);
+                    if (hp + guardMinOffsets[pc] < 0 || hp + guardMaxOffsets[pc] >= heap.length) {
+                        if (!tape.canReserve(hp, guardMinOffsets[pc], guardMaxOffsets[pc])) {
+                            // Execute the rest checking every movement, so that the overflow is reported only when it occurs
+                            budget.fuel = fuel;
+                            runIRShort(ircode, null, ircode.getDispatchOpcodes(), pc, tape.reserve(hp, minOffset, maxOffset));
+                            return;
+                        }
+                        hp = tape.reserve(hp, guardMinOffsets[pc], guardMaxOffsets[pc]);
+                        heap = tape.getShortCells();
+                    }
+                    break;
+                case BfInstruction.WRITE:
+                    out.write(data, operands1[pc], operands2[pc]);
+                    break;
+                default:
+            }
+        }
+    }
+
+    /**
+     * Execute IR-code with 32-bit cells.
+     * Each superinstruction executes its first instruction and falls through to the case of its second instruction.
+     * @param ircode   Brainfuck IR-code
+     * @param tiered   Compiled loops of {@code ircode} ({@code null} to interpret all loops)
+     * @param opcodes  Opcodes to execute (dispatch opcodes, guarded opcodes or canonical opcodes of {@code ircode})
+     * @param pc       Index of the first instruction to execute
+     * @param hp       Heap pointer
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     */
+    @SuppressWarnings("fallthrough")
+    private void runIRInt(BfIRCode ircode, BfTieredCode tiered, byte[] opcodes, int pc, int hp) throws IOException {
+        // Keep the invariant that cells from hp + minOffset to hp + maxOffset are allocated unless the heap is clamped
+        int minOffset = ircode.getMinOffset();
+        int maxOffset = ircode.getMaxOffset();
+        int[] guardMinOffsets = ircode.getGuardMinOffsets();
+        int[] guardMaxOffsets = ircode.getGuardMaxOffsets();
+        int[] heap = tape.getIntCells();
+        int[] operands1 = ircode.getOperands1();
+        int[] operands2 = ircode.getOperands2();
+        byte[] data = ircode.getData();
+        // The number of back-edges taken at each LoopEnd
+        int[] backEdges = tiered == null ? null : new int[opcodes.length];
+        int fuel = budget.fuel;
+        for (; pc < opcodes.length; pc++) {
+            switch (opcodes[pc]) {
+                case BfInstruction.ADD_MOVE:
+                    heap[hp + operands1[pc]] += operands2[pc];
+                    pc++;
+                    // fall through
+                case BfInstruction.MOVE:
+                    hp += operands1[pc];
+                    break;
+                case BfInstruction.ADD:
+                    heap[hp + operands1[pc]] += operands2[pc];
+                    break;
+                case BfInstruction.MUL_ADD_SET:
+                    heap[hp + operands1[pc]] += heap[hp] * operands2[pc];
+                    pc++;
+                    // fall through
+                case BfInstruction.SET:
+                    heap[hp + operands1[pc]] = operands2[pc];
+                    break;
+                case BfInstruction.SET_MOVE:
+                    heap[hp + operands1[pc]] = operands2[pc];
+                    pc++;
+                    hp += operands1[pc];
+                    break;
+                case BfInstruction.NEXT:
+                    hp += operands1[pc];
+                    if (hp + minOffset < 0 || hp + maxOffset >= heap.length) {
+                        hp = tape.reserve(hp, minOffset, maxOffset);
+                        heap = tape.getIntCells();
+                    }
+                    break;
+                case BfInstruction.PUTCHAR:
+                    out.write(heap[hp + operands1[pc]]);
+                    break;
+                case BfInstruction.GETCHAR:
+                    heap[hp + operands1[pc]] = in.read();
+                    break;
+                case BfInstruction.MOVE_LOOP_START:
+                    hp += operands1[pc];
+                    pc++;
+                    // fall through
+                case BfInstruction.LOOP_START:
+                    if (heap[hp] == 0) {
+                        pc = operands1[pc];
+                    }
+                    break;
+                case BfInstruction.MOVE_LOOP_END:
+                    hp += operands1[pc];
+                    pc++;
+                    if (heap[hp] != 0) {
+                        if (--fuel < 0) {
+                            fuel = budget.refill();
+                        }
+                        pc = operands1[pc];
+                    }
+                    break;
+                case BfInstruction.ADD_LOOP_END:
+                    heap[hp + operands1[pc]] += operands2[pc];
+                    pc++;
+                    if (heap[hp] != 0) {
+                        if (--fuel < 0) {
+                            fuel = budget.refill();
+                        }
+                        pc = operands1[pc];
+                    }
+                    break;
+                case BfInstruction.LOOP_END_MOVE:
+                    if (heap[hp] != 0) {
+                        if (--fuel < 0) {
+                            fuel = budget.refill();
+                        }
+                        pc = operands1[pc];
+                    } else {
+                        pc++;
+                        hp += operands1[pc];
+                    }
+                    break;
+                case BfInstruction.GUARDED_LOOP_END:
+                    if (hp + guardMinOffsets[pc] < 0 || hp + guardMaxOffsets[pc] >= heap.length) {
+                        if (!tape.canReserve(hp, guardMinOffsets[pc], guardMaxOffsets[pc])) {
+                            // Execute the rest checking every movement, so that the overflow is reported only when it occurs
+                            budget.fuel = fuel;
+                            runIRInt(ircode, null, ircode.getDispatchOpcodes(), pc, tape.reserve(hp, minOffset, maxOffset));
+                            return;
+                        }
+                        hp = tape.reserve(hp, guardMinOffsets[pc], guardMaxOffsets[pc]);
+                        heap = tape.getIntCells();
+                    }
+                    // fall through
+                case BfInstruction.LOOP_END:
+                    if (heap[hp] != 0) {
+                        if (--fuel < 0) {
+                            fuel = budget.refill();
+                        }
+                        if (backEdges != null && ++backEdges[pc] > BfTieredCode.COMPILE_THRESHOLD) {
+                            BfCompiledLoop loop = tiered.getLoop(pc);
+                            if (loop != null) {
+                                backEdges[pc] = BfTieredCode.COMPILE_THRESHOLD;
+                                budget.fuel = fuel;
+                                hp = loop.run(tape, hp, out, in, budget);
+                                fuel = budget.fuel;
+                                heap = tape.getIntCells();
+                                break;
+                            }
+                            // Never try again
+                            backEdges[pc] = Integer.MIN_VALUE;
+                        }
+                        pc = operands1[pc];
+                    }
+                    break;
+                case BfInstruction.MUL_ADD:
+                    heap[hp + operands1[pc]] += heap[hp] * operands2[pc];
+                    break;
+                case BfInstruction.SCAN_RIGHT:
+                    hp = BfTapeScanner.scanRight(heap, hp, operands1[pc]);
+                    if (hp + maxOffset >= heap.length) {
+                        hp = tape.reserve(hp, minOffset, maxOffset);
+                        heap = tape.getIntCells();
+                    }
+                    break;
+                case BfInstruction.SCAN_LEFT:
+                    hp = BfTapeScanner.scanLeft(heap, hp, operands1[pc]);
+                    if (hp + minOffset < 0) {
+                        hp = tape.reserve(hp, minOffset, maxOffset);
+                        heap = tape.getIntCells();
+                    }
+                    break;
+                case BfInstruction.GUARDED_SCAN_RIGHT:
+                    hp = BfTapeScanner.scanRight(heap, hp, operands1[pc]);
+                    if (hp + guardMinOffsets[pc] < 0 || hp + guardMaxOffsets[pc] >= heap.length) {
+                        if (!tape.canReserve(hp, guardMinOffsets[pc], guardMaxOffsets[pc])) {
+                            // Execute the rest checking every movement, so that the overflow is reported only when it occurs
+                            budget.fuel = fuel;
+                            runIRInt(ircode, null, ircode.getDispatchOpcodes(), pc, tape.reserve(hp, minOffset, maxOffset));
+                            return;
+                        }
+                        hp = tape.reserve(hp, guardMinOffsets[pc], guardMaxOffsets[pc]);
+                        heap = tape.getIntCells();
+                    }
+                    break;
+                case BfInstruction.GUARDED_SCAN_LEFT:
+                    hp = BfTapeScanner.scanLeft(heap, hp, operands1[pc]);
+                    if (hp + guardMinOffsets[pc] < 0 || hp + guardMaxOffsets[pc] >= heap.length) {
+                        if (!tape.canReserve(hp, guardMinOffsets[pc], guardMaxOffsets[pc])) {
+                            // Execute the rest checking every movement, so that the overflow is reported only when it occurs
+                            budget.fuel = fuel;
+                            runIRInt(ircode, null, ircode.getDispatchOpcodes(), pc, tape.reserve(hp, minOffset, maxOffset));
+                            return;
+                        }
+                        hp = tape.reserve(hp, guardMinOffsets[pc], guardMaxOffsets[pc]);
+                        heap = tape.getIntCells();
+                    }
+                    break;
+                case BfInstruction.WRITE:
+                    out.write(data, operands1[pc], operands2[pc]);
+                    break;
+                default:
+            }
+        }
+    }
+
+    /**
+     * Execute IR-code counting executions of each instruction.
+     * This loop is separated from {@link #runIR(BfIRCode)} so that execution without profiling pays nothing for it.
+     * It accesses cells through {@link BfTape#get(int)} and {@link BfTape#set(int, int)}, so one loop serves every cell width.
+     * @param ircode     Brainfuck IR-code
+     * @param counts     The number of executions of each instruction (output)
+     * @param scanSteps  The number of cells skipped by each scan instruction (output)
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     */
+    void runProfile(BfIRCode ircode, long[] counts, long[] scanSteps) throws IOException {
+        try {
+            runProfile(ircode, counts, scanSteps, tape.reserve(0, ircode.getMinOffset(), ircode.getMaxOffset()));
+        } catch (IndexOutOfBoundsException e) {
+            throw tape.toOverflow(e);
+        }
+    }
+
+    /**
+     * Execute IR-code counting executions of each instruction
+     * @param ircode     Brainfuck IR-code
+     * @param counts     The number of executions of each instruction (output)
+     * @param scanSteps  The number of cells skipped by each scan instruction (output)
+     * @param hp         Heap pointer
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     */
+    private void runProfile(BfIRCode ircode, long[] counts, long[] scanSteps, int hp) throws IOException {
+        int minOffset = ircode.getMinOffset();
+        int maxOffset = ircode.getMaxOffset();
+        byte[] opcodes = ircode.getOpcodes();
+        int[] operands1 = ircode.getOperands1();
+        int[] operands2 = ircode.getOperands2();
+        byte[] data = ircode.getData();
+        int fuel = budget.fuel;
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            counts[pc]++;
+            switch (opcodes[pc]) {
+                case BfInstruction.ADD:
+                    tape.set(hp + operands1[pc], tape.get(hp + operands1[pc]) + operands2[pc]);
+                    break;
+                case BfInstruction.SET:
+                    tape.set(hp + operands1[pc], operands2[pc]);
+                    break;
+                case BfInstruction.NEXT:
+                    hp = tape.reserve(hp + operands1[pc], minOffset, maxOffset);
+                    break;
+                case BfInstruction.PUTCHAR:
+                    out.write((byte) tape.get(hp + operands1[pc]));
+                    break;
+                case BfInstruction.GETCHAR:
+                    tape.set(hp + operands1[pc], in.read());
+                    break;
+                case BfInstruction.LOOP_START:
+                    if (tape.get(hp) == 0) {
+                        pc = operands1[pc];
+                    }
+                    break;
+                case BfInstruction.LOOP_END:
+                    if (tape.get(hp) != 0) {
+                        if (--fuel < 0) {
+                            fuel = budget.refill();
+                        }
+                        pc = operands1[pc];
+                    }
+                    break;
+                case BfInstruction.MUL_ADD:
+                    tape.set(hp + operands1[pc], tape.get(hp + operands1[pc]) + tape.get(hp) * operands2[pc]);
+                    break;
+                case BfInstruction.SCAN_RIGHT:
+                    while (tape.get(hp) != 0) {
+                        hp = tape.reserve(hp + operands1[pc], minOffset, maxOffset);
+                        scanSteps[pc]++;
+                    }
+                    break;
+                case BfInstruction.SCAN_LEFT:
+                    while (tape.get(hp) != 0) {
+                        hp = tape.reserve(hp - operands1[pc], minOffset, maxOffset);
+                        scanSteps[pc]++;
+                    }
+                    break;
+                case BfInstruction.WRITE:
+                    out.write(data, operands1[pc], operands2[pc]);
+                    break;
+                default:
+            }
+        }
+    }
+
+    /**
+     * Execute IR-code translated to JVM bytecode
+     * @param jitCode  IR-code translated to JVM bytecode
+     * @param ircode   Brainfuck IR-code which {@code jitCode} is translated from
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     */
+    void runJit(BfCompiledCode jitCode, BfIRCode ircode) throws IOException {
+        int hp = tape.reserve(0, ircode.getMinOffset(), ircode.getMaxOffset());
+        try {
+            jitCode.run(tape, hp, out, in, budget);
+        } catch (IndexOutOfBoundsException e) {
+            throw tape.toOverflow(e);
+        }
+    }
+}
@@ -0,0 +1,502 @@
+package org.koturn.brainfuck;
+
+import java.util.Arrays;
+
+
+/**
+ * Brainfuck IR-code stored as flat primitive arrays.
+ * The i-th instruction consists of {@code opcodes[i]}, {@code operands1[i]} and {@code operands2[i]}.
+ * Bytes written by {@link BfInstruction#WRITE} are stored in the constant data.
+ */
+final class BfIRCode {
+    /**
+     * Minimum capacity of arrays
+     */
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * Opcodes (one of the constants in {@link BfInstruction})
+     */
+    private byte[] opcodes;
+    /**
+     * Opcodes executed by interpreters, in which some instructions are replaced with superinstructions
+     * ({@code null} if no superinstruction is selected)
+     */
+    private byte[] dispatchOpcodes;
+    /**
+     * Opcodes executed by interpreters when cells of each segment are reserved by guards
+     * ({@code null} if the program is executed only with {@link #dispatchOpcodes})
+     */
+    private byte[] guardedOpcodes;
+    /**
+     * Minimum offset of cells reserved at the start of the program when {@link #guardedOpcodes} is executed
+     */
+    private int entryMinOffset;
+    /**
+     * Maximum offset of cells reserved at the start of the program when {@link #guardedOpcodes} is executed
+     */
+    private int entryMaxOffset;
+    /**
+     * Minimum offset of cells reserved by the guard at each index of {@link #guardedOpcodes}
+     */
+    private int[] guardMinOffsets;
+    /**
+     * Maximum offset of cells reserved by the guard at each index of {@link #guardedOpcodes}
+     */
+    private int[] guardMaxOffsets;
+    /**
+     * Operand 1 of each instruction
+     */
+    private int[] operands1;
+    /**
+     * Operand 2 of each instruction
+     */
+    private int[] operands2;
+    /**
+     * Position in the source code which each instruction is compiled from ({@code null} if it is unknown)
+     */
+    private int[] sourcePositions;
+    /**
+     * Constant data referred by {@link BfInstruction#WRITE}
+     */
+    private byte[] data;
+    /**
+     * Number of instructions
+     */
+    private int size;
+    /**
+     * Length of the constant data
+     */
+    private int dataLength;
+    /**
+     * Minimum offset of cells accessed relative to the pointer (computed by {@link #trim()})
+     */
+    private int minOffset;
+    /**
+     * Maximum offset of cells accessed relative to the pointer (computed by {@link #trim()})
+     */
+    private int maxOffset;
+    /**
+     * The number of steps which {@link BfPartialEvalPass} executed at compile time in place of this IR-code,
+     * which are charged at the start of each execution
+     */
+    private long evaluatedSteps;
+
+    /**
+     * Create empty IR-code
+     * @param capacity            Initial capacity
+     * @param hasSourcePositions  Record source position of each instruction or not
+     */
+    BfIRCode(int capacity, boolean hasSourcePositions) {
+        capacity = Math.max(capacity, MIN_CAPACITY);
+        opcodes = new byte[capacity];
+        operands1 = new int[capacity];
+        operands2 = new int[capacity];
+        sourcePositions = hasSourcePositions ? new int[capacity] : null;
+        data = new byte[0];
+        size = 0;
+        dataLength = 0;
+    }
+
+    /**
+     * Create IR-code which consists of specified arrays.
+     * Source positions of the instructions are unknown.
+     * @param opcodes    Opcodes
+     * @param operands1  Operand 1 of each instruction
+     * @param operands2  Operand 2 of each instruction
+     * @param data       Constant data
+     */
+    BfIRCode(byte[] opcodes, int[] operands1, int[] operands2, byte[] data) {
+        this.opcodes = opcodes;
+        this.operands1 = operands1;
+        this.operands2 = operands2;
+        this.data = data;
+        this.size = opcodes.length;
+        this.dataLength = data.length;
+        computeOffsets();
+    }
+
+    /**
+     * Append one instruction
+     * @param opcode    Opcode
+     * @param operand1  Operand 1
+     * @param operand2  Operand 2
+     * @return  Index of appended instruction
+     */
+    int add(byte opcode, int operand1, int operand2) {
+        if (size == opcodes.length) {
+            int newCapacity = size + (size >> 1);
+            opcodes = Arrays.copyOf(opcodes, newCapacity);
+            operands1 = Arrays.copyOf(operands1, newCapacity);
+            operands2 = Arrays.copyOf(operands2, newCapacity);
+            if (sourcePositions != null) {
+                sourcePositions = Arrays.copyOf(sourcePositions, newCapacity);
+            }
+        }
+        opcodes[size] = opcode;
+        operands1[size] = operand1;
+        operands2[size] = operand2;
+        return size++;
+    }
+
+    /**
+     * Append one instruction whose operand 2 is zero
+     * @param opcode    Opcode
+     * @param operand1  Operand 1
+     * @return  Index of appended instruction
+     */
+    int add(byte opcode, int operand1) {
+        return add(opcode, operand1, 0);
+    }
+
+    /**
+     * Append one instruction which doesn't have any operands
+     * @param opcode  Opcode
+     * @return  Index of appended instruction
+     */
+    int add(byte opcode) {
+        return add(opcode, 0, 0);
+    }
+
+    /**
+     * Append {@link BfInstruction#WRITE} and the bytes which it writes
+     * @param b       Bytes to write
+     * @param offset  Start offset in {@code b}
+     * @param length  The number of bytes to write
+     * @return  Index of appended instruction
+     */
+    int addWrite(byte[] b, int offset, int length) {
+        if (dataLength + length > data.length) {
+            data = Arrays.copyOf(data, Math.max(dataLength + length, dataLength + (dataLength >> 1)));
+        }
+        System.arraycopy(b, offset, data, dataLength, length);
+        dataLength += length;
+        return add(BfInstruction.WRITE, dataLength - length, length);
+    }
+
+    /**
+     * Append a copy of an instruction of another IR-code with its source position.
+     * Operand 1 of {@link BfInstruction#LOOP_START} and {@link BfInstruction#LOOP_END} is copied as is,
+     * so {@link #linkLoops()} must be called after all instructions are appended.
+     * The constant data of {@link BfInstruction#WRITE} is copied together.
+     * @param src    IR-code which has the instruction
+     * @param index  Index of the instruction in {@code src}
+     * @return  Index of appended instruction
+     */
+    int copy(BfIRCode src, int index) {
+        int newIndex = src.opcodes[index] == BfInstruction.WRITE
+            ? addWrite(src.data, src.operands1[index], src.operands2[index])
+            : add(src.opcodes[index], src.operands1[index], src.operands2[index]);
+        if (sourcePositions != null && src.sourcePositions != null) {
+            sourcePositions[newIndex] = src.sourcePositions[index];
+        }
+        return newIndex;
+    }
+
+    /**
+     * Set operand 1 of each {@link BfInstruction#LOOP_START} and {@link BfInstruction#LOOP_END} to the index of the matching one
+     */
+    void linkLoops() {
+        int[] loopStack = new int[MIN_CAPACITY];
+        int sp = 0;
+        for (int i = 0; i < size; i++) {
+            if (opcodes[i] == BfInstruction.LOOP_START) {
+                if (sp == loopStack.length) {
+                    loopStack = Arrays.copyOf(loopStack, sp << 1);
+                }
+                loopStack[sp++] = i;
+            } else if (opcodes[i] == BfInstruction.LOOP_END) {
+                int loopStartIdx = loopStack[--sp];
+                operands1[loopStartIdx] = i;
+                operands1[i] = loopStartIdx;
+            }
+        }
+    }
+
+    /**
+     * Remove instructions from {@code newSize} to the last one
+     * @param newSize  The number of remaining instructions
+     */
+    void truncate(int newSize) {
+        size = newSize;
+    }
+
+    /**
+     * Shrink arrays to the number of instructions and compute the range of offsets of accessed cells.
+     * After calling this method, length of each array is equal to {@link #size()}
+     * and length of the constant data is equal to {@link #getDataLength()}.
+     * This must be called after the last instruction is appended or replaced.
+     */
+    void trim() {
+        if (size != opcodes.length) {
+            opcodes = Arrays.copyOf(opcodes, size);
+            operands1 = Arrays.copyOf(operands1, size);
+            operands2 = Arrays.copyOf(operands2, size);
+            if (sourcePositions != null) {
+                sourcePositions = Arrays.copyOf(sourcePositions, size);
+            }
+        }
+        if (dataLength != data.length) {
+            data = Arrays.copyOf(data, dataLength);
+        }
+        computeOffsets();
+    }
+
+    /**
+     * Get the number of instructions
+     * @return  The number of instructions
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Getter of {@link #opcodes}
+     * @return Value of {@link #opcodes}
+     */
+    byte[] getOpcodes() {
+        return opcodes;
+    }
+
+    /**
+     * Get opcodes executed by interpreters
+     * @return  {@link #dispatchOpcodes}, or {@link #opcodes} if no superinstruction is selected
+     */
+    byte[] getDispatchOpcodes() {
+        return dispatchOpcodes == null ? opcodes : dispatchOpcodes;
+    }
+
+    /**
+     * Setter of {@link #dispatchOpcodes}.
+     * This must be called after the last modification of this IR-code.
+     * @param dispatchOpcodes  Opcodes executed by interpreters
+     */
+    void setDispatchOpcodes(byte[] dispatchOpcodes) {
+        this.dispatchOpcodes = dispatchOpcodes;
+    }
+
+    /**
+     * Getter of {@link #guardedOpcodes}
+     * @return Value of {@link #guardedOpcodes}
+     */
+    byte[] getGuardedOpcodes() {
+        return guardedOpcodes;
+    }
+
+    /**
+     * Setter of {@link #guardedOpcodes}.
+     * This must be called after the last modification of this IR-code.
+     * @param guardedOpcodes  Opcodes executed by interpreters when cells of each segment are reserved by guards
+     */
+    void setGuardedOpcodes(byte[] guardedOpcodes) {
+        this.guardedOpcodes = guardedOpcodes;
+    }
+
+    /**
+     * Set offsets of cells reserved by guards, which are inferred by {@link BfTapeBounds}
+     * @param entryMinOffset   Minimum offset of cells reserved at the start of the program
+     * @param entryMaxOffset   Maximum offset of cells reserved at the start of the program
+     * @param guardMinOffsets  Minimum offset of cells reserved by the guard of each instruction
+     * @param guardMaxOffsets  Maximum offset of cells reserved by the guard of each instruction
+     */
+    void setGuards(int entryMinOffset, int entryMaxOffset, int[] guardMinOffsets, int[] guardMaxOffsets) {
+        this.entryMinOffset = entryMinOffset;
+        this.entryMaxOffset = entryMaxOffset;
+        this.guardMinOffsets = guardMinOffsets;
+        this.guardMaxOffsets = guardMaxOffsets;
+    }
+
+    /**
+     * Getter of {@link #entryMinOffset}
+     * @return Value of {@link #entryMinOffset}
+     */
+    int getEntryMinOffset() {
+        return entryMinOffset;
+    }
+
+    /**
+     * Getter of {@link #entryMaxOffset}
+     * @return Value of {@link #entryMaxOffset}
+     */
+    int getEntryMaxOffset() {
+        return entryMaxOffset;
+    }
+
+    /**
+     * Getter of {@link #guardMinOffsets}
+     * @return Value of {@link #guardMinOffsets}
+     */
+    int[] getGuardMinOffsets() {
+        return guardMinOffsets;
+    }
+
+    /**
+     * Getter of {@link #guardMaxOffsets}
+     * @return Value of {@link #guardMaxOffsets}
+     */
+    int[] getGuardMaxOffsets() {
+        return guardMaxOffsets;
+    }
+
+    /**
+     * Getter of {@link #operands1}
+     * @return Value of {@link #operands1}
+     */
+    int[] getOperands1() {
+        return operands1;
+    }
+
+    /**
+     * Getter of {@link #operands2}
+     * @return Value of {@link #operands2}
+     */
+    int[] getOperands2() {
+        return operands2;
+    }
+
+    /**
+     * Getter of {@link #data}
+     * @return Value of {@link #data}
+     */
+    byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Get the length of the constant data
+     * @return  Length of the constant data
+     */
+    int getDataLength() {
+        return dataLength;
+    }
+
+    /**
+     * Getter of {@link #evaluatedSteps}
+     * @return Value of {@link #evaluatedSteps}
+     */
+    long getEvaluatedSteps() {
+        return evaluatedSteps;
+    }
+
+    /**
+     * Setter of {@link #evaluatedSteps}
+     * @param evaluatedSteps  The number of steps executed at compile time
+     */
+    void setEvaluatedSteps(long evaluatedSteps) {
+        this.evaluatedSteps = evaluatedSteps;
+    }
+
+    /**
+     * Getter of {@link #sourcePositions}
+     * @return Value of {@link #sourcePositions} ({@code null} if source positions are unknown)
+     */
+    int[] getSourcePositions() {
+        return sourcePositions;
+    }
+
+    /**
+     * Record the source position of instructions from {@code from} to the last one
+     * @param from      Index of the first instruction
+     * @param position  Position in the source code which the instructions are compiled from
+     */
+    void setSourcePosition(int from, int position) {
+        if (sourcePositions != null) {
+            Arrays.fill(sourcePositions, from, size, position);
+        }
+    }
+
+    /**
+     * Set operand 1 of specified instruction
+     * @param index     Index of instruction
+     * @param operand1  A value for operand 1
+     */
+    void setOperand1(int index, int operand1) {
+        operands1[index] = operand1;
+    }
+
+    /**
+     * Set operand 2 of specified instruction
+     * @param index     Index of instruction
+     * @param operand2  A value for operand 2
+     */
+    void setOperand2(int index, int operand2) {
+        operands2[index] = operand2;
+    }
+
+    /**
+     * Replace specified instruction
+     * @param index     Index of instruction
+     * @param opcode    Opcode
+     * @param operand1  Operand 1
+     * @param operand2  Operand 2
+     */
+    void set(int index, byte opcode, int operand1, int operand2) {
+        opcodes[index] = opcode;
+        operands1[index] = operand1;
+        operands2[index] = operand2;
+    }
+
+    /**
+     * Get the minimum offset of cells accessed relative to the pointer
+     * @return  The minimum offset (not positive)
+     */
+    int getMinOffset() {
+        return minOffset;
+    }
+
+    /**
+     * Get the maximum offset of cells accessed relative to the pointer
+     * @return  The maximum offset (not negative)
+     */
+    int getMaxOffset() {
+        return maxOffset;
+    }
+
+    /**
+     * Compute {@link #minOffset} and {@link #maxOffset}, which interpreters and compiled code read at every start
+     */
+    private void computeOffsets() {
+        minOffset = 0;
+        maxOffset = 0;
+        for (int i = 0; i < size; i++) {
+            if (isCellAccess(opcodes[i])) {
+                minOffset = Math.min(minOffset, operands1[i]);
+                maxOffset = Math.max(maxOffset, operands1[i]);
+            }
+        }
+    }
+
+    /**
+     * Check whether operand 1 of the opcode is an offset of the accessed cell
+     * @param opcode  Opcode
+     * @return  {@code true} if operand 1 is a cell offset, otherwise {@code false}
+     */
+    private static boolean isCellAccess(byte opcode) {
+        switch (opcode) {
+            case BfInstruction.ADD:
+            case BfInstruction.SET:
+            case BfInstruction.PUTCHAR:
+            case BfInstruction.GETCHAR:
+            case BfInstruction.MUL_ADD:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Stringify this IR-code (one instruction per line)
+     */
+    @Override
+    public String toString() {
+        String nl = System.getProperty("line.separator");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            sb.append(i).append(": ").append(BfInstruction.getMnemonic(opcodes[i]))
+                .append(' ').append(operands1[i])
+                .append(' ').append(operands2[i])
+                .append(nl);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,201 @@
+package org.koturn.brainfuck;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.UUID;
+
+
+/**
+ * Binary file of precompiled IR-code.
+ * The file consists of the following big endian fields:
+ * <ol>
+ *   <li>Magic number {@code "BFIR"} (4 bytes)</li>
+ *   <li>Format version (4 bytes)</li>
+ *   <li>Optimize level (4 bytes)</li>
+ *   <li>SHA-256 digest of the source code (32 bytes)</li>
+ *   <li>Number of steps executed at compile time (8 bytes)</li>
+ *   <li>Number of instructions {@code n} (4 bytes)</li>
+ *   <li>Opcodes ({@code n} bytes)</li>
+ *   <li>Operand 1 of each instruction ({@code 4 * n} bytes)</li>
+ *   <li>Operand 2 of each instruction ({@code 4 * n} bytes)</li>
+ *   <li>Length of the constant data {@code m} (4 bytes)</li>
+ *   <li>Constant data ({@code m} bytes)</li>
+ * </ol>
+ */
+final class BfIRCodeFile {
+    /**
+     * Magic number at the beginning of the file
+     */
+    private static final int MAGIC = 0x42464952;
+    /**
+     * Format version.
+     * This must be incremented whenever the layout of the file or the output of the compiler is changed.
+     */
+    private static final int FORMAT_VERSION = 4;
+    /**
+     * Length of SHA-256 digest
+     */
+    private static final int DIGEST_LENGTH = 32;
+    /**
+     * Length of the header
+     */
+    private static final int HEADER_LENGTH = Integer.BYTES * 4 + DIGEST_LENGTH + Long.BYTES;
+
+    /**
+     * This class is not instantiable
+     */
+    private BfIRCodeFile() {
+    }
+
+    /**
+     * Read IR-code by memory-mapping the file
+     * @param path           Path to the file
+     * @param digest         SHA-256 digest of the source code
+     * @param optimizeLevel  Optimize level
+     * @return  IR-code, or {@code null} if the file doesn't exist, its version is different,
+     *          it is for another source code or another optimize level, or it holds invalid IR-code
+     * @throws IOException  Throw when something error is occured while reading the file
+     */
+    static BfIRCode read(Path path, byte[] digest, int optimizeLevel) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_LENGTH) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION || buffer.getInt() != optimizeLevel) {
+                return null;
+            }
+            byte[] fileDigest = new byte[DIGEST_LENGTH];
+            buffer.get(fileDigest);
+            long evaluatedSteps = buffer.getLong();
+            int size = buffer.getInt();
+            if (!Arrays.equals(fileDigest, digest) || evaluatedSteps < 0 || size < 0 || buffer.remaining() < (long) size * (Byte.BYTES + Integer.BYTES * 2) + Integer.BYTES) {
+                return null;
+            }
+            byte[] opcodes = new byte[size];
+            int[] operands1 = new int[size];
+            int[] operands2 = new int[size];
+            buffer.get(opcodes);
+            buffer.asIntBuffer().get(operands1);
+            buffer.position(buffer.position() + size * Integer.BYTES);
+            buffer.asIntBuffer().get(operands2);
+            buffer.position(buffer.position() + size * Integer.BYTES);
+            int dataLength = buffer.getInt();
+            if (dataLength < 0 || buffer.remaining() != dataLength) {
+                return null;
+            }
+            if (!isValid(opcodes, operands1, operands2, dataLength)) {
+                return null;
+            }
+            byte[] data = new byte[dataLength];
+            buffer.get(data);
+            BfIRCode ircode = new BfIRCode(opcodes, operands1, operands2, data);
+            ircode.setEvaluatedSteps(evaluatedSteps);
+            return ircode;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check that IR-code read from a file can be executed safely.
+     * A file whose digest matches may still be truncated or edited by hand, and interpreters and the JIT compiler
+     * trust IR-code: every opcode must be a canonical instruction, each loop must be a properly nested pair
+     * whose instructions point at each other, scans must have positive strides and constant data must be in range.
+     * @param opcodes     Opcodes
+     * @param operands1   Operand 1 of each instruction
+     * @param operands2   Operand 2 of each instruction
+     * @param dataLength  Length of the constant data
+     * @return  {@code true} if IR-code is valid, otherwise {@code false}
+     */
+    private static boolean isValid(byte[] opcodes, int[] operands1, int[] operands2, int dataLength) {
+        int[] loopStack = new int[64];
+        int sp = 0;
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            switch (opcodes[pc]) {
+                case BfInstruction.ADD:
+                case BfInstruction.SET:
+                case BfInstruction.NEXT:
+                case BfInstruction.PUTCHAR:
+                case BfInstruction.GETCHAR:
+                case BfInstruction.MUL_ADD:
+                    break;
+                case BfInstruction.LOOP_START:
+                    if (sp == loopStack.length) {
+                        loopStack = Arrays.copyOf(loopStack, sp << 1);
+                    }
+                    loopStack[sp++] = pc;
+                    break;
+                case BfInstruction.LOOP_END:
+                    if (sp == 0 || operands1[pc] != loopStack[--sp] || operands1[operands1[pc]] != pc) {
+                        return false;
+                    }
+                    break;
+                case BfInstruction.SCAN_RIGHT:
+                case BfInstruction.SCAN_LEFT:
+                    if (operands1[pc] <= 0) {
+                        return false;
+                    }
+                    break;
+                case BfInstruction.WRITE:
+                    if (operands1[pc] < 0 || operands2[pc] < 0 || (long) operands1[pc] + operands2[pc] > dataLength) {
+                        return false;
+                    }
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return sp == 0;
+    }
+
+    /**
+     * Write IR-code.
+     * The file is written to a temporary file first and then renamed, so readers never see a partially written file.
+     * @param path           Path to the file
+     * @param digest         SHA-256 digest of the source code
+     * @param optimizeLevel  Optimize level which {@code ircode} is compiled with
+     * @param ircode         IR-code
+     * @throws IOException  Throw when something error is occured while writing the file
+     */
+    static void write(Path path, byte[] digest, int optimizeLevel, BfIRCode ircode) throws IOException {
+        int size = ircode.size();
+        int dataLength = ircode.getDataLength();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + size * (Byte.BYTES + Integer.BYTES * 2) + Integer.BYTES + dataLength);
+        buffer.putInt(MAGIC)
+            .putInt(FORMAT_VERSION)
+            .putInt(optimizeLevel)
+            .put(digest)
+            .putLong(ircode.getEvaluatedSteps())
+            .putInt(size)
+            .put(ircode.getOpcodes(), 0, size);
+        buffer.asIntBuffer().put(ircode.getOperands1(), 0, size);
+        buffer.position(buffer.position() + size * Integer.BYTES);
+        buffer.asIntBuffer().put(ircode.getOperands2(), 0, size);
+        buffer.position(buffer.position() + size * Integer.BYTES);
+        buffer.putInt(dataLength)
+            .put(ircode.getData(), 0, dataLength);
+        buffer.clear();
+        Path absPath = path.toAbsolutePath();
+        Path tmpPath = absPath.resolveSibling(absPath.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(tmpPath, absPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+    }
+}
@@ -1,68 +1,151 @@
 package org.koturn.brainfuck;
 
-class BfInstruction {
-    enum InstructionType {
-        Add,
-        Sub,
-        Prev,
-        Next,
-        Putchar,
-        Getchar,
-        LoopStart,
-        LoopEnd,
-        AssignZero,
-        Unknown
-    }
-
-    private InstructionType type;
+/**
+ * Opcodes of brainfuck IR-code.
+ * Each opcode is stored into {@link BfIRCode#getOpcodes()} and its operands are stored into
+ * {@link BfIRCode#getOperands1()} and {@link BfIRCode#getOperands2()}.
+ * <p>
+ * Superinstructions, from {@link #ADD_MOVE} to {@link #LOOP_END_MOVE}, appear only in {@link BfIRCode#getDispatchOpcodes()}
+ * and {@link BfIRCode#getGuardedOpcodes()}.
+ * A superinstruction executes the instruction at its index with its operands and then the next instruction with the operands of the next index,
+ * whose opcode is kept as is, so that the next instruction can still be reached by jumps.
+ * </p>
+ * <p>
+ * {@link #MOVE}, the guards from {@link #GUARDED_LOOP_END} to {@link #GUARDED_SCAN_LEFT} and superinstructions which contain {@link #MOVE}
+ * appear only in {@link BfIRCode#getGuardedOpcodes()},
+ * where {@link BfTapeBounds} has proved that every movement stays in cells reserved by the last guard.
+ * </p>
+ */
+final class BfInstruction {
     /**
-     * Operand 1
+     * Add operand 2 to the cell at offset operand 1
      */
-    private int value1;
+    static final byte ADD = 0;
     /**
-     * Operand 2
+     * Assign operand 2 to the cell at offset operand 1
      */
-    private int value2;
-
-    public BfInstruction() {
-        this(InstructionType.Unknown, 0, 0);
-    }
-
-    public BfInstruction(InstructionType type) {
-        this(type, 0, 0);
-    }
-
-    public BfInstruction(InstructionType type, int value1) {
-        this(type, value1, 0);
-    }
-
-    public BfInstruction(InstructionType type, int value1, int value2) {
-        this.type = type;
-        this.value1 = value1;
-        this.value2 = value2;
-    }
-
-    public InstructionType getType() {
-        return type;
-    }
-
-    public void setType(InstructionType type) {
-        this.type = type;
-    }
-
-    public int getValue1() {
-        return value1;
-    }
+    static final byte SET = 1;
+    /**
+     * Move pointer by operand 1 (negative value moves pointer to left)
+     */
+    static final byte NEXT = 2;
+    /**
+     * Write the cell at offset operand 1 to output
+     */
+    static final byte PUTCHAR = 3;
+    /**
+     * Read one byte from input into the cell at offset operand 1
+     */
+    static final byte GETCHAR = 4;
+    /**
+     * Jump to the index of operand 1 (the matching {@link #LOOP_END}) if current cell is zero
+     */
+    static final byte LOOP_START = 5;
+    /**
+     * Jump to the index of operand 1 (the matching {@link #LOOP_START}) if current cell is not zero
+     */
+    static final byte LOOP_END = 6;
+    /**
+     * Add current cell multiplied by operand 2 to the cell at offset operand 1
+     */
+    static final byte MUL_ADD = 7;
+    /**
+     * Move pointer to right by operand 1 until current cell becomes zero
+     */
+    static final byte SCAN_RIGHT = 8;
+    /**
+     * Move pointer to left by operand 1 until current cell becomes zero
+     */
+    static final byte SCAN_LEFT = 9;
+    /**
+     * Write operand 2 bytes of the constant data of IR-code from index operand 1 to output
+     */
+    static final byte WRITE = 10;
+    /**
+     * Superinstruction of {@link #ADD} and {@link #MOVE}
+     */
+    static final byte ADD_MOVE = 11;
+    /**
+     * Superinstruction of {@link #SET} and {@link #MOVE}
+     */
+    static final byte SET_MOVE = 12;
+    /**
+     * Superinstruction of {@link #MUL_ADD} and {@link #SET}
+     */
+    static final byte MUL_ADD_SET = 13;
+    /**
+     * Superinstruction of {@link #MOVE} and {@link #LOOP_START}
+     */
+    static final byte MOVE_LOOP_START = 14;
+    /**
+     * Superinstruction of {@link #MOVE} and {@link #LOOP_END}
+     */
+    static final byte MOVE_LOOP_END = 15;
+    /**
+     * Superinstruction of {@link #ADD} and {@link #LOOP_END}
+     */
+    static final byte ADD_LOOP_END = 16;
+    /**
+     * Superinstruction of {@link #LOOP_END} and {@link #MOVE}
+     */
+    static final byte LOOP_END_MOVE = 17;
+    /**
+     * Move pointer by operand 1 without checking the heap, which is done by the last guard
+     */
+    static final byte MOVE = 18;
+    /**
+     * {@link #LOOP_END} which first reserves cells of the loop body and the code after the loop (the guard of an unbounded loop)
+     */
+    static final byte GUARDED_LOOP_END = 19;
+    /**
+     * {@link #SCAN_RIGHT} which reserves cells of the code after the scan (the guard of a scan)
+     */
+    static final byte GUARDED_SCAN_RIGHT = 20;
+    /**
+     * {@link #SCAN_LEFT} which reserves cells of the code after the scan (the guard of a scan)
+     */
+    static final byte GUARDED_SCAN_LEFT = 21;
 
-    public void setValue1(int value1) {
-        this.value1 = value1;
-    }
+    /**
+     * Mnemonics of each opcode (indexed by opcode)
+     */
+    private static final String[] MNEMONICS = {
+        "Add",
+        "Set",
+        "Next",
+        "Putchar",
+        "Getchar",
+        "LoopStart",
+        "LoopEnd",
+        "MulAdd",
+        "ScanRight",
+        "ScanLeft",
+        "Write",
+        "AddMove",
+        "SetMove",
+        "MulAddSet",
+        "MoveLoopStart",
+        "MoveLoopEnd",
+        "AddLoopEnd",
+        "LoopEndMove",
+        "Move",
+        "GuardedLoopEnd",
+        "GuardedScanRight",
+        "GuardedScanLeft"
+    };
 
-    public int getValue2() {
-        return value2;
+    /**
+     * This class is not instantiable
+     */
+    private BfInstruction() {
     }
 
-    public void setValue2(int value2) {
-        this.value2 = value2;
+    /**
+     * Get mnemonic of specified opcode
+     * @param opcode  Opcode
+     * @return  Mnemonic of {@code opcode}
+     */
+    static String getMnemonic(byte opcode) {
+        return opcode >= 0 && opcode < MNEMONICS.length ? MNEMONICS[opcode] : "Unknown";
     }
 }
@@ -0,0 +1,601 @@
+package org.koturn.brainfuck;
+
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Compiler from brainfuck IR-code to JVM bytecode.
+ * Generated class is defined as a hidden class, so it is unloaded when the returned instance is unreachable.
+ * The same class with a {@code main} method is written to a file by {@link BfAotCompiler},
+ * and a single hot loop is compiled by {@link #compileLoop(BfIRCode, int, int)} during tiered execution.
+ * Each outer loop is translated into its own method, because HotSpot doesn't compile a method
+ * whose bytecode is longer than {@link #HUGE_METHOD_LIMIT}.
+ */
+final class BfJitCompiler {
+    /**
+     * Cell type of the runtime heap
+     */
+    private enum CellType {
+        BYTE(8, "[B", BfClassWriter.BALOAD, BfClassWriter.BASTORE, "getByteCells"),
+        SHORT(16, "[S", BfClassWriter.SALOAD, BfClassWriter.SASTORE, "getShortCells"),
+        INT(32, "[I", BfClassWriter.IALOAD, BfClassWriter.IASTORE, "getIntCells");
+
+        /**
+         * Bit width of each cell
+         */
+        final int bits;
+        /**
+         * Descriptor of the cell array
+         */
+        final String arrayDesc;
+        /**
+         * Opcode which loads a cell
+         */
+        final int load;
+        /**
+         * Opcode which stores a cell
+         */
+        final int store;
+        /**
+         * Name of the method of {@link BfTape} which returns the cell array
+         */
+        final String getter;
+
+        /**
+         * Ctor
+         * @param bits       Bit width of each cell
+         * @param arrayDesc  Descriptor of the cell array
+         * @param load       Opcode which loads a cell
+         * @param store      Opcode which stores a cell
+         * @param getter     Name of the method of {@link BfTape} which returns the cell array
+         */
+        CellType(int bits, String arrayDesc, int load, int store, String getter) {
+            this.bits = bits;
+            this.arrayDesc = arrayDesc;
+            this.load = load;
+            this.store = store;
+            this.getter = getter;
+        }
+
+        /**
+         * Get the cell type of specified bit width
+         * @param bits  Bit width of each cell (8, 16 or 32)
+         * @return  Cell type
+         */
+        static CellType of(int bits) {
+            return bits == 16 ? SHORT : bits == 32 ? INT : BYTE;
+        }
+
+        /**
+         * Truncate a value to the width of the cell
+         * @param value  A value
+         * @return  {@code value} truncated and sign-extended
+         */
+        int truncate(int value) {
+            return value << (32 - bits) >> (32 - bits);
+        }
+    }
+
+    /**
+     * Internal name of the generated class (a suffix is added by {@link MethodHandles.Lookup#defineHiddenClass})
+     */
+    private static final String CLASS_NAME = "org/koturn/brainfuck/BfJitCode";
+    /**
+     * Internal name of the generated class of a loop
+     */
+    private static final String LOOP_CLASS_NAME = "org/koturn/brainfuck/BfJitLoop";
+    /**
+     * Internal name of {@link BfCompiledCode}
+     */
+    private static final String INTERFACE_NAME = "org/koturn/brainfuck/BfCompiledCode";
+    /**
+     * Internal name of {@link BfCompiledLoop}
+     */
+    private static final String LOOP_INTERFACE_NAME = "org/koturn/brainfuck/BfCompiledLoop";
+    /**
+     * Internal name of {@link BrainfuckOutput}
+     */
+    private static final String OUTPUT_NAME = "org/koturn/brainfuck/BrainfuckOutput";
+    /**
+     * Internal name of {@link BrainfuckInput}
+     */
+    private static final String INPUT_NAME = "org/koturn/brainfuck/BrainfuckInput";
+    /**
+     * Internal name of {@link BfTape}
+     */
+    private static final String TAPE_NAME = "org/koturn/brainfuck/BfTape";
+    /**
+     * Internal name of {@link BfBudget}
+     */
+    private static final String BUDGET_NAME = "org/koturn/brainfuck/BfBudget";
+    /**
+     * Internal name of {@link BfAotMain}
+     */
+    private static final String AOT_MAIN_NAME = "org/koturn/brainfuck/BfAotMain";
+    /**
+     * Internal name of {@link BfTapeScanner}
+     */
+    private static final String SCANNER_NAME = "org/koturn/brainfuck/BfTapeScanner";
+    /**
+     * Descriptor of {@link BfCompiledCode#run(BfTape, int, BrainfuckOutput, BrainfuckInput, BfBudget)}
+     */
+    private static final String RUN_DESC = "(Lorg/koturn/brainfuck/BfTape;ILorg/koturn/brainfuck/BrainfuckOutput;Lorg/koturn/brainfuck/BrainfuckInput;Lorg/koturn/brainfuck/BfBudget;)V";
+    /**
+     * Descriptor of {@link BfCompiledLoop#run(BfTape, int, BrainfuckOutput, BrainfuckInput, BfBudget)}
+     */
+    private static final String RUN_LOOP_DESC = "(Lorg/koturn/brainfuck/BfTape;ILorg/koturn/brainfuck/BrainfuckOutput;Lorg/koturn/brainfuck/BrainfuckInput;Lorg/koturn/brainfuck/BfBudget;)I";
+    /**
+     * Name of the static method which holds the translated program
+     */
+    private static final String EXECUTE_NAME = "execute";
+    /**
+     * Local variable index of the runtime heap
+     */
+    private static final int TAPE = 0;
+    /**
+     * Local variable index of the cells of the runtime heap
+     */
+    private static final int HEAP = 1;
+    /**
+     * Local variable index of the heap pointer
+     */
+    private static final int HP = 2;
+    /**
+     * Local variable index of the output destination
+     */
+    private static final int OUT = 3;
+    /**
+     * Local variable index of the input source
+     */
+    private static final int IN = 4;
+    /**
+     * Local variable index of the remaining steps and deadline
+     */
+    private static final int BUDGET = 5;
+    /**
+     * Local variable index of the fuel, which is a parameter so that every frame has the same locals
+     */
+    private static final int FUEL = 6;
+    /**
+     * Maximum number of characters in one string constant which holds output of {@link BfInstruction#WRITE}.
+     * Each character takes at most two bytes in a CONSTANT_Utf8 entry, whose length is limited to 65535 bytes.
+     */
+    private static final int MAX_STRING_LENGTH = 32767;
+    /**
+     * Max stack depth of generated code (arguments of a call to the method of an outer loop)
+     */
+    private static final int MAX_STACK = 7;
+    /**
+     * Maximum length of bytecode which HotSpot compiles (the default of {@code -XX:+DontCompileHugeMethods}).
+     * A longer method is always interpreted, which is slower than the interpreter of IR-code.
+     */
+    private static final int HUGE_METHOD_LIMIT = 8000;
+
+    /**
+     * This class is not instantiable
+     */
+    private BfJitCompiler() {
+    }
+
+    /**
+     * Compile IR-code to JVM bytecode and load it.
+     * The program is translated into a static method whose heap parameter has the array type of the cell width,
+     * and {@link BfCompiledCode#run(BfTape, int, BrainfuckOutput, BrainfuckInput, BfBudget)} just calls it
+     * with the fuel of the budget.
+     * @param ircode    Brainfuck IR-code
+     * @param cellBits  Bit width of each cell (8, 16 or 32)
+     * @return  Compiled program, or {@code null} if an outer loop exceeds {@link #HUGE_METHOD_LIMIT}
+     */
+    static BfCompiledCode compile(BfIRCode ircode, int cellBits) {
+        byte[] image = generateClass(ircode, cellBits, 0, CLASS_NAME, false);
+        return image == null ? null : (BfCompiledCode) define(image);
+    }
+
+    /**
+     * Compile one loop of IR-code to JVM bytecode and load it.
+     * The compiled loop starts at {@link BfInstruction#LOOP_START}, returns after {@link BfInstruction#LOOP_END}
+     * and keeps the same invariant of allocated cells as interpreters, so an interpreter can call it in the middle of execution.
+     * @param ircode        Brainfuck IR-code
+     * @param loopStartIdx  Index of {@link BfInstruction#LOOP_START} of the loop
+     * @param cellBits      Bit width of each cell (8, 16 or 32)
+     * @return  Compiled loop, or {@code null} if the loop exceeds {@link #HUGE_METHOD_LIMIT}
+     */
+    static BfCompiledLoop compileLoop(BfIRCode ircode, int loopStartIdx, int cellBits) {
+        CellType cell = CellType.of(cellBits);
+        String executeDesc = executeDescriptor(cell, "I");
+        BfClassWriter cw = new BfClassWriter();
+        addConstructor(cw);
+        BfClassWriter.Code code = generateLoop(cw, ircode, loopStartIdx, cell, HUGE_METHOD_LIMIT);
+        if (code == null) {
+            return null;
+        }
+        cw.addMethod(BfClassWriter.ACC_PRIVATE | BfClassWriter.ACC_STATIC, EXECUTE_NAME, executeDesc, code);
+        addRun(cw, cell, LOOP_CLASS_NAME, RUN_LOOP_DESC, executeDesc, BfClassWriter.IRETURN);
+        return (BfCompiledLoop) define(cw.toByteArray(
+                    BfClassWriter.ACC_FINAL | BfClassWriter.ACC_SUPER,
+                    LOOP_CLASS_NAME,
+                    "java/lang/Object",
+                    LOOP_INTERFACE_NAME));
+    }
+
+    /**
+     * Define a generated class as a hidden class and instantiate it
+     * @param image  Class file image
+     * @return  Instance of the class
+     */
+    private static Object define(byte[] image) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(image, true);
+            return lookup.lookupClass().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to load generated class", e);
+        }
+    }
+
+    /**
+     * Generate a class file which implements {@link BfCompiledCode}.
+     * A standalone class is public and has {@code public static void main(String[])},
+     * which executes the program through {@link BfAotMain#run(BfCompiledCode, int, int, int, int, String[])}.
+     * A standalone class has no IR-code to fall back on, so its outer loops may exceed {@link #HUGE_METHOD_LIMIT}.
+     * @param ircode        Brainfuck IR-code
+     * @param cellBits      Bit width of each cell (8, 16 or 32)
+     * @param heapSize      Maximum runtime heap size of {@code main} method (unused if {@code isStandalone} is {@code false})
+     * @param className     Internal name of the generated class
+     * @param isStandalone  Add {@code main} method or not
+     * @return  Class file image, or {@code null} if IR-code is too large to translate
+     */
+    static byte[] generateClass(BfIRCode ircode, int cellBits, int heapSize, String className, boolean isStandalone) {
+        CellType cell = CellType.of(cellBits);
+        String executeDesc = executeDescriptor(cell, "V");
+        BfClassWriter cw = new BfClassWriter();
+        addConstructor(cw);
+        BfClassWriter.Code code = generateProgram(cw, className, ircode, cell,
+                isStandalone ? BfClassWriter.MAX_CODE_LENGTH : HUGE_METHOD_LIMIT);
+        if (code == null) {
+            return null;
+        }
+        cw.addMethod(BfClassWriter.ACC_PRIVATE | BfClassWriter.ACC_STATIC, EXECUTE_NAME, executeDesc, code);
+        addRun(cw, cell, className, RUN_DESC, executeDesc, BfClassWriter.RETURN);
+        if (isStandalone) {
+            BfClassWriter.Code main = new BfClassWriter.Code(6, 1);
+            main.op2(BfClassWriter.NEW, cw.classRef(className))
+                .op(BfClassWriter.DUP)
+                .op2(BfClassWriter.INVOKESPECIAL, cw.methodRef(className, "<init>", "()V"))
+                .pushInt(cw, cellBits)
+                .pushInt(cw, heapSize)
+                .pushInt(cw, ircode.getMinOffset())
+                .pushInt(cw, ircode.getMaxOffset())
+                .local(BfClassWriter.ALOAD, 0)
+                .op2(BfClassWriter.INVOKESTATIC, cw.methodRef(AOT_MAIN_NAME, "run", "(L" + INTERFACE_NAME + ";IIII[Ljava/lang/String;)V"))
+                .op(BfClassWriter.RETURN);
+            cw.addMethod(BfClassWriter.ACC_PUBLIC | BfClassWriter.ACC_STATIC, "main", "([Ljava/lang/String;)V", main);
+        }
+        return cw.toByteArray(
+                (isStandalone ? BfClassWriter.ACC_PUBLIC : 0) | BfClassWriter.ACC_FINAL | BfClassWriter.ACC_SUPER,
+                className,
+                "java/lang/Object",
+                INTERFACE_NAME);
+    }
+
+    /**
+     * Get the descriptor of the static method which executes instructions
+     * @param cell        Cell type of the runtime heap
+     * @param returnDesc  Descriptor of the return type
+     * @return  Descriptor of the method
+     */
+    private static String executeDescriptor(CellType cell, String returnDesc) {
+        return "(L" + TAPE_NAME + ";" + cell.arrayDesc + "IL" + OUTPUT_NAME + ";L" + INPUT_NAME + ";L" + BUDGET_NAME + ";I)" + returnDesc;
+    }
+
+    /**
+     * Add the default constructor
+     * @param cw  Class writer
+     */
+    private static void addConstructor(BfClassWriter cw) {
+        BfClassWriter.Code ctor = new BfClassWriter.Code(1, 1);
+        ctor.local(BfClassWriter.ALOAD, 0)
+            .op2(BfClassWriter.INVOKESPECIAL, cw.methodRef("java/lang/Object", "<init>", "()V"))
+            .op(BfClassWriter.RETURN);
+        cw.addMethod(BfClassWriter.ACC_PUBLIC, "<init>", "()V", ctor);
+    }
+
+    /**
+     * Add {@code run} method which calls the static method with the cell array of the heap and the fuel of the budget
+     * @param cw           Class writer
+     * @param cell         Cell type of the runtime heap
+     * @param className    Internal name of the generated class
+     * @param runDesc      Descriptor of {@code run} method
+     * @param executeDesc  Descriptor of the static method
+     * @param returnOp     Return instruction ({@link BfClassWriter#RETURN} or {@link BfClassWriter#IRETURN})
+     */
+    private static void addRun(BfClassWriter cw, CellType cell, String className, String runDesc, String executeDesc, int returnOp) {
+        BfClassWriter.Code run = new BfClassWriter.Code(7, 6);
+        run.local(BfClassWriter.ALOAD, 1)
+            .local(BfClassWriter.ALOAD, 1)
+            .op2(BfClassWriter.INVOKEVIRTUAL, cw.methodRef(TAPE_NAME, cell.getter, "()" + cell.arrayDesc))
+            .local(BfClassWriter.ILOAD, 2)
+            .local(BfClassWriter.ALOAD, 3)
+            .local(BfClassWriter.ALOAD, 4)
+            .local(BfClassWriter.ALOAD, 5)
+            .local(BfClassWriter.ALOAD, 5)
+            .op2(BfClassWriter.GETFIELD, cw.fieldRef(BUDGET_NAME, "fuel", "I"))
+            .op2(BfClassWriter.INVOKESTATIC, cw.methodRef(className, EXECUTE_NAME, executeDesc))
+            .op(returnOp);
+        cw.addMethod(BfClassWriter.ACC_PUBLIC, "run", runDesc, run);
+    }
+
+    /**
+     * Generate body of the static method which executes the whole IR-code.
+     * Each outer loop is generated as its own static method of the class, which is called with the locals
+     * and returns the heap pointer, so that HotSpot can compile every loop even if the whole program is huge.
+     * @param cw             Class writer which owns the constant pool
+     * @param className      Internal name of the generated class
+     * @param ircode         Brainfuck IR-code
+     * @param cell           Cell type of the runtime heap
+     * @param maxLoopLength  Maximum length of bytecode of each outer loop
+     * @return  Generated bytecode, or {@code null} if an outer loop exceeds {@code maxLoopLength}
+     *          or the rest exceeds {@link BfClassWriter#MAX_CODE_LENGTH}
+     */
+    private static BfClassWriter.Code generateProgram(BfClassWriter cw, String className, BfIRCode ircode, CellType cell, int maxLoopLength) {
+        byte[] opcodes = ircode.getOpcodes();
+        int[] operands1 = ircode.getOperands1();
+        String loopDesc = executeDescriptor(cell, "I");
+        BfClassWriter.Code code = new BfClassWriter.Code(MAX_STACK, FUEL + 1);
+        int from = 0;
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            if (opcodes[pc] != BfInstruction.LOOP_START) {
+                continue;
+            }
+            if (!emitInstructions(cw, code, ircode, from, pc, cell, BfClassWriter.MAX_CODE_LENGTH)) {
+                return null;
+            }
+            BfClassWriter.Code loop = generateLoop(cw, ircode, pc, cell, maxLoopLength);
+            if (loop == null) {
+                return null;
+            }
+            String loopName = "loop" + pc;
+            cw.addMethod(BfClassWriter.ACC_PRIVATE | BfClassWriter.ACC_STATIC, loopName, loopDesc, loop);
+            code.local(BfClassWriter.ALOAD, TAPE)
+                .local(BfClassWriter.ALOAD, HEAP)
+                .local(BfClassWriter.ILOAD, HP)
+                .local(BfClassWriter.ALOAD, OUT)
+                .local(BfClassWriter.ALOAD, IN)
+                .local(BfClassWriter.ALOAD, BUDGET)
+                .local(BfClassWriter.ILOAD, FUEL)
+                .op2(BfClassWriter.INVOKESTATIC, cw.methodRef(className, loopName, loopDesc))
+                .local(BfClassWriter.ISTORE, HP)
+                .local(BfClassWriter.ALOAD, TAPE)
+                .op2(BfClassWriter.INVOKEVIRTUAL, cw.methodRef(TAPE_NAME, cell.getter, "()" + cell.arrayDesc))
+                .local(BfClassWriter.ASTORE, HEAP)
+                .local(BfClassWriter.ALOAD, BUDGET)
+                .op2(BfClassWriter.GETFIELD, cw.fieldRef(BUDGET_NAME, "fuel", "I"))
+                .local(BfClassWriter.ISTORE, FUEL);
+            pc = operands1[pc];
+            from = pc + 1;
+        }
+        if (!emitInstructions(cw, code, ircode, from, opcodes.length, cell, BfClassWriter.MAX_CODE_LENGTH)) {
+            return null;
+        }
+        code.local(BfClassWriter.ALOAD, BUDGET)
+            .local(BfClassWriter.ILOAD, FUEL)
+            .op2(BfClassWriter.PUTFIELD, cw.fieldRef(BUDGET_NAME, "fuel", "I"))
+            .op(BfClassWriter.RETURN);
+        return code.offset() > BfClassWriter.MAX_CODE_LENGTH ? null : code;
+    }
+
+    /**
+     * Generate body of the static method which executes one loop and returns the heap pointer.
+     * The fuel is written back to the budget on return.
+     * @param cw            Class writer which owns the constant pool
+     * @param ircode        Brainfuck IR-code
+     * @param loopStartIdx  Index of {@link BfInstruction#LOOP_START} of the loop
+     * @param cell          Cell type of the runtime heap
+     * @param maxLength     Maximum length of bytecode
+     * @return  Generated bytecode, or {@code null} if it exceeds {@code maxLength}
+     */
+    private static BfClassWriter.Code generateLoop(BfClassWriter cw, BfIRCode ircode, int loopStartIdx, CellType cell, int maxLength) {
+        BfClassWriter.Code code = new BfClassWriter.Code(MAX_STACK, FUEL + 1);
+        if (!emitInstructions(cw, code, ircode, loopStartIdx, ircode.getOperands1()[loopStartIdx] + 1, cell, maxLength)) {
+            return null;
+        }
+        code.local(BfClassWriter.ALOAD, BUDGET)
+            .local(BfClassWriter.ILOAD, FUEL)
+            .op2(BfClassWriter.PUTFIELD, cw.fieldRef(BUDGET_NAME, "fuel", "I"))
+            .local(BfClassWriter.ILOAD, HP)
+            .op(BfClassWriter.IRETURN);
+        return code.offset() > maxLength ? null : code;
+    }
+
+    /**
+     * Emit instructions from {@code from} to {@code to - 1}.
+     * Loops must not cross the range.
+     * The heap is kept allocated for offsets of the whole IR-code, which is the same invariant as interpreters.
+     * Each back-edge consumes the fuel in the same way as interpreters.
+     * @param cw         Class writer which owns the constant pool
+     * @param code       Bytecode buffer
+     * @param ircode     Brainfuck IR-code
+     * @param from       Index of the first instruction
+     * @param to         Index of the end of instructions (exclusive)
+     * @param cell       Cell type of the runtime heap
+     * @param maxLength  Maximum length of bytecode
+     * @return  {@code false} if bytecode exceeds {@code maxLength}, otherwise {@code true}
+     */
+    private static boolean emitInstructions(BfClassWriter cw, BfClassWriter.Code code, BfIRCode ircode, int from, int to, CellType cell, int maxLength) {
+        byte[] opcodes = ircode.getOpcodes();
+        int[] operands1 = ircode.getOperands1();
+        int[] operands2 = ircode.getOperands2();
+        byte[] data = ircode.getData();
+        int minOffset = ircode.getMinOffset();
+        int maxOffset = ircode.getMaxOffset();
+        // Offset of the conditional branch of each LoopStart, and offset of the loop body
+        int[] exitBranches = new int[to];
+        int[] bodyOffsets = new int[to];
+        for (int pc = from; pc < to; pc++) {
+            switch (opcodes[pc]) {
+                case BfInstruction.ADD:
+                    emitCellIndex(cw, code, operands1[pc]);
+                    code.op(BfClassWriter.DUP2)
+                        .op(cell.load)
+                        .pushInt(cw, operands2[pc])
+                        .op(BfClassWriter.IADD)
+                        .op(cell.store);
+                    break;
+                case BfInstruction.SET:
+                    emitCellIndex(cw, code, operands1[pc]);
+                    code.pushInt(cw, cell.truncate(operands2[pc]))
+                        .op(cell.store);
+                    break;
+                case BfInstruction.NEXT:
+                    code.iinc(cw, HP, operands1[pc]);
+                    emitReserve(cw, code, cell, minOffset, maxOffset, operands1[pc] < 0, operands1[pc] > 0);
+                    break;
+                case BfInstruction.PUTCHAR:
+                    code.local(BfClassWriter.ALOAD, OUT);
+                    emitCellIndex(cw, code, operands1[pc]);
+                    code.op(cell.load)
+                        .op2(BfClassWriter.INVOKEVIRTUAL, cw.methodRef(OUTPUT_NAME, "write", "(I)V"));
+                    break;
+                case BfInstruction.GETCHAR:
+                    emitCellIndex(cw, code, operands1[pc]);
+                    code.local(BfClassWriter.ALOAD, IN)
+                        .op2(BfClassWriter.INVOKEVIRTUAL, cw.methodRef(INPUT_NAME, "read", "()I"))
+                        .op(cell.store);
+                    break;
+                case BfInstruction.LOOP_START:
+                    emitCellIndex(cw, code, 0);
+                    code.op(cell.load);
+                    exitBranches[pc] = code.branch(BfClassWriter.IFEQ);
+                    bodyOffsets[pc] = code.frame();
+                    break;
+                case BfInstruction.LOOP_END:
+                    {
+                        int loopStartIdx = operands1[pc];
+                        emitCellIndex(cw, code, 0);
+                        code.op(cell.load);
+                        int exitBranch = code.branch(BfClassWriter.IFEQ);
+                        code.iinc(cw, FUEL, -1)
+                            .local(BfClassWriter.ILOAD, FUEL)
+                            .branch(BfClassWriter.IFGE, bodyOffsets[loopStartIdx]);
+                        code.local(BfClassWriter.ALOAD, BUDGET)
+                            .op2(BfClassWriter.INVOKEVIRTUAL, cw.methodRef(BUDGET_NAME, "refill", "()I"))
+                            .local(BfClassWriter.ISTORE, FUEL)
+                            .branch(BfClassWriter.GOTO, bodyOffsets[loopStartIdx]);
+                        int exitOffset = code.frame();
+                        code.patch(exitBranch, exitOffset);
+                        code.patch(exitBranches[loopStartIdx], exitOffset);
+                    }
+                    break;
+                case BfInstruction.MUL_ADD:
+                    emitCellIndex(cw, code, operands1[pc]);
+                    code.op(BfClassWriter.DUP2)
+                        .op(cell.load);
+                    emitCellIndex(cw, code, 0);
+                    code.op(cell.load)
+                        .pushInt(cw, operands2[pc])
+                        .op(BfClassWriter.IMUL)
+                        .op(BfClassWriter.IADD)
+                        .op(cell.store);
+                    break;
+                case BfInstruction.SCAN_RIGHT:
+                    emitScan(cw, code, cell, "scanRight", operands1[pc]);
+                    emitReserve(cw, code, cell, minOffset, maxOffset, false, true);
+                    break;
+                case BfInstruction.SCAN_LEFT:
+                    emitScan(cw, code, cell, "scanLeft", operands1[pc]);
+                    emitReserve(cw, code, cell, minOffset, maxOffset, true, false);
+                    break;
+                case BfInstruction.WRITE:
+                    for (int off = operands1[pc], end = operands1[pc] + operands2[pc]; off < end; off += MAX_STRING_LENGTH) {
+                        code.local(BfClassWriter.ALOAD, OUT)
+                            .ldc(cw.string(new String(data, off, Math.min(end - off, MAX_STRING_LENGTH), StandardCharsets.ISO_8859_1)))
+                            .op2(BfClassWriter.INVOKEVIRTUAL, cw.methodRef(OUTPUT_NAME, "writeChars", "(Ljava/lang/String;)V"));
+                    }
+                    break;
+                default:
+            }
+            if (code.offset() > maxLength) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Emit a check which grows the heap if cells from {@code hp + minOffset} to {@code hp + maxOffset} are not allocated
+     * @param cw          Class writer which owns the constant pool
+     * @param code        Bytecode buffer
+     * @param cell        Cell type of the runtime heap
+     * @param minOffset   Minimum offset of accessed cells
+     * @param maxOffset   Maximum offset of accessed cells
+     * @param checkLeft   Check the left end of the heap
+     * @param checkRight  Check the right end of the heap
+     */
+    private static void emitReserve(BfClassWriter cw, BfClassWriter.Code code, CellType cell, int minOffset, int maxOffset, boolean checkLeft, boolean checkRight) {
+        int toGrow = -1;
+        int toSkip = -1;
+        if (checkLeft) {
+            code.local(BfClassWriter.ILOAD, HP);
+            if (minOffset != 0) {
+                code.pushInt(cw, minOffset).op(BfClassWriter.IADD);
+            }
+            if (checkRight) {
+                toGrow = code.branch(BfClassWriter.IFLT);
+            } else {
+                toSkip = code.branch(BfClassWriter.IFGE);
+            }
+        }
+        if (checkRight) {
+            code.local(BfClassWriter.ILOAD, HP);
+            if (maxOffset != 0) {
+                code.pushInt(cw, maxOffset).op(BfClassWriter.IADD);
+            }
+            code.local(BfClassWriter.ALOAD, HEAP)
+                .op(BfClassWriter.ARRAYLENGTH);
+            toSkip = code.branch(BfClassWriter.IF_ICMPLT);
+        }
+        if (toGrow != -1) {
+            code.patch(toGrow, code.frame());
+        }
+        code.local(BfClassWriter.ALOAD, TAPE)
+            .local(BfClassWriter.ILOAD, HP)
+            .pushInt(cw, minOffset)
+            .pushInt(cw, maxOffset)
+            .op2(BfClassWriter.INVOKEVIRTUAL, cw.methodRef(TAPE_NAME, "reserve", "(III)I"))
+            .local(BfClassWriter.ISTORE, HP)
+            .local(BfClassWriter.ALOAD, TAPE)
+            .op2(BfClassWriter.INVOKEVIRTUAL, cw.methodRef(TAPE_NAME, cell.getter, "()" + cell.arrayDesc))
+            .local(BfClassWriter.ASTORE, HEAP);
+        code.patch(toSkip, code.frame());
+    }
+
+    /**
+     * Emit {@code hp = BfTapeScanner.name(heap, hp, stride)}
+     * @param cw      Class writer which owns the constant pool
+     * @param code    Bytecode buffer
+     * @param cell    Cell type of the runtime heap
+     * @param name    Method name of {@link BfTapeScanner}
+     * @param stride  Distance between examined cells
+     */
+    private static void emitScan(BfClassWriter cw, BfClassWriter.Code code, CellType cell, String name, int stride) {
+        emitCellIndex(cw, code, 0);
+        code.pushInt(cw, stride)
+            .op2(BfClassWriter.INVOKESTATIC, cw.methodRef(SCANNER_NAME, name, "(" + cell.arrayDesc + "II)I"))
+            .local(BfClassWriter.ISTORE, HP);
+    }
+
+    /**
+     * Emit {@code heap, hp + offset} (pushes the heap array and the index of the target cell)
+     * @param cw      Class writer which owns the constant pool
+     * @param code    Bytecode buffer
+     * @param offset  Offset of the target cell
+     */
+    private static void emitCellIndex(BfClassWriter cw, BfClassWriter.Code code, int offset) {
+        code.local(BfClassWriter.ALOAD, HEAP)
+            .local(BfClassWriter.ILOAD, HP);
+        if (offset != 0) {
+            code.pushInt(cw, offset)
+                .op(BfClassWriter.IADD);
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package org.koturn.brainfuck;
+
+import java.util.Arrays;
+
+
+/**
+ * Pass which executes the input-independent prefix of the program at compile time.
+ * The program is evaluated from the initial tape, whose cells are all zero, until it reaches {@link BfInstruction#GETCHAR},
+ * and the evaluated prefix is replaced with its result:
+ * {@link BfInstruction#WRITE} of the output, {@link BfInstruction#SET} of each non-zero cell and {@link BfInstruction#NEXT} to the pointer.
+ * The output is split where the prefix touched a cell beyond all the cells it had touched before,
+ * and {@link BfInstruction#NEXT} to that cell is emitted between the parts,
+ * so that the tape is reserved in the same order as the prefix and a heap which is too small overflows after the same output.
+ * Back-edges taken by the prefix are recorded as {@link BfIRCode#getEvaluatedSteps()} and charged to the limit of each execution.
+ * <p>
+ * The evaluation also stops at the step budget, the output budget, the tape budget
+ * and when a cell value leaves the range from -255 to 255; cells are evaluated with exact integers,
+ * and in this range a cell is zero exactly when it is zero in every cell width, so the result holds for every cell width.
+ * The program can be resumed only at an instruction outside of loops,
+ * so when the evaluation stops in a loop, the prefix ends at the last instruction outside of loops which was reached.
+ * </p>
+ */
+final class BfPartialEvalPass implements BfPass {
+    /**
+     * Maximum number of evaluated steps
+     */
+    private static final long MAX_STEPS = 1L << 24;
+    /**
+     * Maximum number of bytes of pre-rendered output
+     */
+    private static final int MAX_OUTPUT_SIZE = 1 << 20;
+    /**
+     * Maximum number of cells touched by the evaluated prefix
+     */
+    private static final int MAX_TAPE_SIZE = 1 << 16;
+    /**
+     * Maximum absolute value of cells
+     */
+    private static final int MAX_ABS_VALUE = 255;
+    /**
+     * Initial capacity of recorded changes of the range of touched cells
+     */
+    private static final int INITIAL_EXTENTS_CAPACITY = 16;
+
+    /**
+     * State of evaluation
+     */
+    private static final class Evaluator {
+        /**
+         * Evaluated IR-code
+         */
+        private final BfIRCode ircode;
+        /**
+         * Whether each instruction is outside of loops
+         */
+        private final boolean[] isTopLevel;
+        /**
+         * Evaluated cells
+         */
+        private int[] cells;
+        /**
+         * Index of the initial cell in {@link #cells}
+         */
+        private int origin;
+        /**
+         * Pointer (position relative to the initial cell)
+         */
+        private int hp;
+        /**
+         * Pre-rendered output
+         */
+        private byte[] output;
+        /**
+         * Length of pre-rendered output
+         */
+        private int outputLength;
+        /**
+         * Minimum position of the pointer and the touched cells
+         */
+        private int minPosition;
+        /**
+         * Maximum position of the pointer and the touched cells
+         */
+        private int maxPosition;
+        /**
+         * {@link #outputLength} when {@link #minPosition} or {@link #maxPosition} changed
+         */
+        private int[] extentOutputLengths;
+        /**
+         * {@link #minPosition} after each change recorded in {@link #extentOutputLengths}
+         */
+        private int[] extentMinPositions;
+        /**
+         * {@link #maxPosition} after each change recorded in {@link #extentOutputLengths}
+         */
+        private int[] extentMaxPositions;
+        /**
+         * The number of recorded changes of {@link #minPosition} and {@link #maxPosition}
+         */
+        private int nExtents;
+        /**
+         * Index of the next instruction
+         */
+        private int pc;
+        /**
+         * The number of evaluated steps
+         */
+        private long steps;
+        /**
+         * The number of evaluated back-edges of loops
+         */
+        private long backEdges;
+        /**
+         * Index of the last instruction outside of loops which was reached
+         */
+        private int boundaryPc;
+        /**
+         * The number of steps evaluated before reaching {@link #boundaryPc}
+         */
+        private long boundarySteps;
+
+        /**
+         * Ctor
+         * @param ircode      Evaluated IR-code
+         * @param isTopLevel  Whether each instruction is outside of loops
+         */
+        Evaluator(BfIRCode ircode, boolean[] isTopLevel) {
+            this.ircode = ircode;
+            this.isTopLevel = isTopLevel;
+            this.cells = new int[BfTape.PAGE_SIZE];
+            this.origin = cells.length / 2;
+            this.hp = 0;
+            this.output = new byte[BfTape.PAGE_SIZE];
+            this.outputLength = 0;
+            this.minPosition = 0;
+            this.maxPosition = 0;
+            this.extentOutputLengths = new int[INITIAL_EXTENTS_CAPACITY];
+            this.extentMinPositions = new int[INITIAL_EXTENTS_CAPACITY];
+            this.extentMaxPositions = new int[INITIAL_EXTENTS_CAPACITY];
+            this.nExtents = 0;
+            this.pc = 0;
+            this.steps = 0;
+            this.backEdges = 0;
+            this.boundaryPc = 0;
+            this.boundarySteps = 0;
+        }
+
+        /**
+         * Evaluate the program until it reaches an instruction which cannot be evaluated or the step budget
+         * @param maxSteps  Step budget
+         */
+        void run(long maxSteps) {
+            while (pc < isTopLevel.length) {
+                if (isTopLevel[pc]) {
+                    boundaryPc = pc;
+                    boundarySteps = steps;
+                }
+                if (steps >= maxSteps || !step()) {
+                    return;
+                }
+                pc++;
+            }
+            boundaryPc = pc;
+            boundarySteps = steps;
+        }
+
+        /**
+         * Evaluate the instruction at {@link #pc}
+         * @return  {@code true} if the instruction is evaluated,
+         *          {@code false} if it cannot be evaluated (the state is not changed)
+         */
+        private boolean step() {
+            int operand1 = ircode.getOperands1()[pc];
+            int operand2 = ircode.getOperands2()[pc];
+            steps++;
+            switch (ircode.getOpcodes()[pc]) {
+                case BfInstruction.ADD:
+                    return reserve(hp + operand1) && store(hp + operand1, (long) load(hp + operand1) + operand2);
+                case BfInstruction.SET:
+                    return reserve(hp + operand1) && store(hp + operand1, operand2);
+                case BfInstruction.NEXT:
+                    hp += operand1;
+                    touch(hp);
+                    return true;
+                case BfInstruction.PUTCHAR:
+                    if (!reserve(hp + operand1) || outputLength == MAX_OUTPUT_SIZE) {
+                        return false;
+                    }
+                    if (outputLength == output.length) {
+                        output = Arrays.copyOf(output, outputLength << 1);
+                    }
+                    output[outputLength++] = (byte) load(hp + operand1);
+                    return true;
+                case BfInstruction.LOOP_START:
+                    if (!reserve(hp)) {
+                        return false;
+                    }
+                    if (load(hp) == 0) {
+                        pc = operand1;
+                    }
+                    return true;
+                case BfInstruction.LOOP_END:
+                    if (!reserve(hp)) {
+                        return false;
+                    }
+                    if (load(hp) != 0) {
+                        pc = operand1;
+                        backEdges++;
+                    }
+                    return true;
+                case BfInstruction.MUL_ADD:
+                    return reserve(hp) && reserve(hp + operand1)
+                        && store(hp + operand1, load(hp + operand1) + (long) load(hp) * operand2);
+                case BfInstruction.SCAN_RIGHT:
+                case BfInstruction.SCAN_LEFT:
+                    {
+                        int stride = ircode.getOpcodes()[pc] == BfInstruction.SCAN_RIGHT ? operand1 : -operand1;
+                        int position = hp;
+                        for (; reserve(position); position += stride, steps++) {
+                            if (load(position) == 0) {
+                                hp = position;
+                                return true;
+                            }
+                        }
+                        return false;
+                    }
+                case BfInstruction.WRITE:
+                    if (outputLength + operand2 > MAX_OUTPUT_SIZE) {
+                        return false;
+                    }
+                    if (outputLength + operand2 > output.length) {
+                        output = Arrays.copyOf(output, Math.max(outputLength + operand2, outputLength << 1));
+                    }
+                    System.arraycopy(ircode.getData(), operand1, output, outputLength, operand2);
+                    outputLength += operand2;
+                    return true;
+                default:
+                    // GETCHAR depends on input
+                    return false;
+            }
+        }
+
+        /**
+         * Make a cell accessible
+         * @param position  Position of the cell
+         * @return  {@code true} if the cell is accessible, {@code false} if the tape exceeds {@link #MAX_TAPE_SIZE}
+         */
+        private boolean reserve(int position) {
+            int index = origin + position;
+            if (index >= 0 && index < cells.length) {
+                touch(position);
+                return true;
+            }
+            long need = index < 0 ? -(long) index : (long) index - cells.length + 1;
+            if (cells.length + need > MAX_TAPE_SIZE) {
+                return false;
+            }
+            // Grow by at least the current size unless it exceeds the budget
+            int grow = (int) Math.min(Math.max(need, cells.length), MAX_TAPE_SIZE - cells.length);
+            int front = index < 0 ? grow : 0;
+            int[] newCells = new int[cells.length + grow];
+            System.arraycopy(cells, 0, newCells, front, cells.length);
+            cells = newCells;
+            origin += front;
+            touch(position);
+            return true;
+        }
+
+        /**
+         * Extend the range of the pointer and the touched cells, and record the change with the current output length
+         * @param position  Position of the pointer or the touched cell
+         */
+        private void touch(int position) {
+            if (position >= minPosition && position <= maxPosition) {
+                return;
+            }
+            minPosition = Math.min(minPosition, position);
+            maxPosition = Math.max(maxPosition, position);
+            if (nExtents == 0 || extentOutputLengths[nExtents - 1] != outputLength) {
+                if (nExtents == extentOutputLengths.length) {
+                    extentOutputLengths = Arrays.copyOf(extentOutputLengths, nExtents << 1);
+                    extentMinPositions = Arrays.copyOf(extentMinPositions, nExtents << 1);
+                    extentMaxPositions = Arrays.copyOf(extentMaxPositions, nExtents << 1);
+                }
+                extentOutputLengths[nExtents++] = outputLength;
+            }
+            // Changes without output between them are merged because they reserve the tape at the same point
+            extentMinPositions[nExtents - 1] = minPosition;
+            extentMaxPositions[nExtents - 1] = maxPosition;
+        }
+
+        /**
+         * Read a cell
+         * @param position  Position of the cell
+         * @return  Value of the cell
+         */
+        private int load(int position) {
+            return cells[origin + position];
+        }
+
+        /**
+         * Write a cell
+         * @param position  Position of the cell
+         * @param value     Value of the cell
+         * @return  {@code true} if the cell is written, {@code false} if {@code value} exceeds {@link #MAX_ABS_VALUE}
+         */
+        private boolean store(int position, long value) {
+            if (Math.abs(value) > MAX_ABS_VALUE) {
+                return false;
+            }
+            cells[origin + position] = (int) value;
+            return true;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "PartialEval";
+    }
+
+    @Override
+    public BfIRCode run(BfIRCode ircode) {
+        boolean[] isTopLevel = findTopLevel(ircode);
+        Evaluator evaluator = new Evaluator(ircode, isTopLevel);
+        evaluator.run(MAX_STEPS);
+        if (evaluator.boundaryPc == 0) {
+            return ircode;
+        }
+        if (evaluator.pc != evaluator.boundaryPc) {
+            // Stopped in a loop, so evaluate again up to the last instruction outside of loops
+            long boundarySteps = evaluator.boundarySteps;
+            evaluator = new Evaluator(ircode, isTopLevel);
+            evaluator.run(boundarySteps);
+        }
+        BfIRCode result = new BfIRCode(ircode.size() - evaluator.pc + 1, ircode.getSourcePositions() != null);
+        int current = emitOutput(result, evaluator);
+        if (evaluator.pc < ircode.size()) {
+            emitTape(result, evaluator, current);
+            for (int i = evaluator.pc; i < ircode.size(); i++) {
+                result.copy(ircode, i);
+            }
+        }
+        result.linkLoops();
+        result.trim();
+        result.setEvaluatedSteps(evaluator.backEdges);
+        return result;
+    }
+
+    /**
+     * Emit the output of the evaluated prefix and {@link BfInstruction#NEXT} to the farthest cells which it touched,
+     * in the order in which the prefix produced the output and touched the cells
+     * @param result     Destination IR-code
+     * @param evaluator  Evaluated state
+     * @return  Position of the pointer after the emitted instructions
+     */
+    private static int emitOutput(BfIRCode result, Evaluator evaluator) {
+        int current = 0;
+        int written = 0;
+        int minPosition = 0;
+        int maxPosition = 0;
+        for (int i = 0; i < evaluator.nExtents; i++) {
+            int length = evaluator.extentOutputLengths[i];
+            if (length > written) {
+                result.addWrite(evaluator.output, written, length - written);
+                written = length;
+            }
+            if (evaluator.extentMinPositions[i] < minPosition) {
+                minPosition = evaluator.extentMinPositions[i];
+                result.add(BfInstruction.NEXT, minPosition - current);
+                current = minPosition;
+            }
+            if (evaluator.extentMaxPositions[i] > maxPosition) {
+                maxPosition = evaluator.extentMaxPositions[i];
+                result.add(BfInstruction.NEXT, maxPosition - current);
+                current = maxPosition;
+            }
+        }
+        if (evaluator.outputLength > written) {
+            result.addWrite(evaluator.output, written, evaluator.outputLength - written);
+        }
+        return current;
+    }
+
+    /**
+     * Emit instructions which restore the tape and the pointer of the evaluated prefix.
+     * Offsets of {@link BfInstruction#SET} are kept within {@link BfCompiler#MAX_FOLDED_OFFSET}.
+     * @param result     Destination IR-code
+     * @param evaluator  Evaluated state
+     * @param current    Position of the pointer before the emitted instructions
+     */
+    private static void emitTape(BfIRCode result, Evaluator evaluator, int current) {
+        int[] cells = evaluator.cells;
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] == 0) {
+                continue;
+            }
+            int position = i - evaluator.origin;
+            if (Math.abs(position - current) > BfCompiler.MAX_FOLDED_OFFSET) {
+                result.add(BfInstruction.NEXT, position - current);
+                current = position;
+            }
+            result.add(BfInstruction.SET, position - current, cells[i]);
+        }
+        if (evaluator.hp != current) {
+            result.add(BfInstruction.NEXT, evaluator.hp - current);
+        }
+    }
+
+    /**
+     * Find instructions outside of loops
+     * @param ircode  IR-code
+     * @return  Whether each instruction is outside of loops
+     */
+    private static boolean[] findTopLevel(BfIRCode ircode) {
+        byte[] opcodes = ircode.getOpcodes();
+        boolean[] isTopLevel = new boolean[ircode.size()];
+        int depth = 0;
+        for (int i = 0; i < isTopLevel.length; i++) {
+            isTopLevel[i] = depth == 0;
+            if (opcodes[i] == BfInstruction.LOOP_START) {
+                depth++;
+            } else if (opcodes[i] == BfInstruction.LOOP_END) {
+                depth--;
+            }
+        }
+        return isTopLevel;
+    }
+}
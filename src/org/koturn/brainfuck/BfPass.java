@@ -0,0 +1,21 @@
+package org.koturn.brainfuck;
+
+/**
+ * Optimization pass which rewrites IR-code.
+ * Passes are independent of each other and are applied in the order given by {@link BfPassManager}.
+ */
+interface BfPass {
+    /**
+     * Get the name of this pass shown in statistics
+     * @return  Name of this pass
+     */
+    String getName();
+
+    /**
+     * Rewrite IR-code.
+     * The returned IR-code must be equivalent to {@code ircode} for every cell width and keep the source position of each instruction.
+     * @param ircode  IR-code to rewrite (must not be modified)
+     * @return  Rewritten IR-code
+     */
+    BfIRCode run(BfIRCode ircode);
+}
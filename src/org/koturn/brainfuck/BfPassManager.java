@@ -0,0 +1,78 @@
+package org.koturn.brainfuck;
+
+import java.io.PrintStream;
+
+
+/**
+ * Ordered pipeline of {@link BfPass} selected by optimize level.
+ * <ul>
+ *   <li>Level 1: No pass (the translation by {@link BfCompiler} already folds runs of commands,
+ *       pointer movement, clear loops, scan loops and multiply loops)</li>
+ *   <li>Level 2: {@link BfCombineUpdatesPass}</li>
+ *   <li>Level 3: {@link BfPartialEvalPass}, {@link BfDeadCodePass} and {@link BfCombineUpdatesPass}</li>
+ * </ul>
+ */
+final class BfPassManager {
+    /**
+     * Passes of each optimize level (indexed by level, up to {@link Brainfuck#MAX_OPTIMIZE_LEVEL})
+     */
+    private static final BfPass[][] PASSES = {
+        {},
+        {},
+        {new BfCombineUpdatesPass()},
+        {new BfPartialEvalPass(), new BfDeadCodePass(), new BfCombineUpdatesPass()}
+    };
+
+    /**
+     * This class is not instantiable
+     */
+    private BfPassManager() {
+    }
+
+    /**
+     * Apply passes of specified optimize level
+     * @param ircode   IR-code translated by {@link BfCompiler}
+     * @param level    Optimize level
+     * @param verbose  Destination of statistics of each pass ({@code null} means statistics are not shown)
+     * @return  Optimized IR-code
+     */
+    static BfIRCode run(BfIRCode ircode, int level, PrintStream verbose) {
+        for (BfPass pass : PASSES[level]) {
+            long start = System.nanoTime();
+            int nBefore = ircode.size();
+            BfIRCode optimized = pass.run(ircode);
+            if (optimized != ircode) {
+                optimized.setEvaluatedSteps(optimized.getEvaluatedSteps() + ircode.getEvaluatedSteps());
+                ircode = optimized;
+            }
+            if (verbose != null) {
+                report(verbose, pass.getName(), nBefore, ircode.size(), System.nanoTime() - start);
+            }
+        }
+        return ircode;
+    }
+
+    /**
+     * Show statistics of translation from source code to IR-code
+     * @param verbose      Destination of statistics
+     * @param nAfter       The number of translated instructions
+     * @param elapsedTime  Elapsed time of the translation in nanoseconds
+     */
+    static void reportTranslation(PrintStream verbose, int nAfter, long elapsedTime) {
+        verbose.println(String.format("%-16s %10s    %10d instructions %10s %10.3f ms",
+                    "Translate", "", nAfter, "", elapsedTime / 1000 / 1000.0));
+    }
+
+    /**
+     * Show statistics of a pass
+     * @param verbose      Destination of statistics
+     * @param name         Name of the pass
+     * @param nBefore      The number of instructions before the pass
+     * @param nAfter       The number of instructions after the pass
+     * @param elapsedTime  Elapsed time of the pass in nanoseconds
+     */
+    private static void report(PrintStream verbose, String name, int nBefore, int nAfter, long elapsedTime) {
+        verbose.println(String.format("%-16s %10d -> %10d instructions (%7.2f%%) %10.3f ms",
+                    name, nBefore, nAfter, nBefore == 0 ? 0.0 : 100.0 * (nAfter - nBefore) / nBefore, elapsedTime / 1000 / 1000.0));
+    }
+}
@@ -0,0 +1,83 @@
+package org.koturn.brainfuck;
+
+import java.util.Arrays;
+
+
+/**
+ * Selector of superinstructions executed by interpreters.
+ * Each instruction whose next instruction makes one of the pairs below is replaced with a superinstruction in
+ * {@link BfIRCode#getDispatchOpcodes()}, so that the pair is executed by one dispatch.
+ * The pairs are the most frequently executed ones on the benchmark programs;
+ * {@link BfInstruction#ADD} and {@link BfInstruction#SET} usually precede {@link BfInstruction#NEXT} because offsets are folded,
+ * and a multiply loop ends with {@link BfInstruction#SET} of the counter.
+ * Pairs which contain a movement are selected only in {@link BfIRCode#getGuardedOpcodes()},
+ * because their movement is {@link BfInstruction#MOVE}, which doesn't check the heap.
+ * The canonical opcodes are not modified, so JIT compilation, profiling and IR-code files are not affected.
+ */
+final class BfSuperinstructions {
+    /**
+     * Superinstruction for each pair of opcodes: {first opcode, second opcode, superinstruction}
+     */
+    private static final byte[][] PAIRS = {
+        {BfInstruction.ADD, BfInstruction.MOVE, BfInstruction.ADD_MOVE},
+        {BfInstruction.SET, BfInstruction.MOVE, BfInstruction.SET_MOVE},
+        {BfInstruction.MUL_ADD, BfInstruction.SET, BfInstruction.MUL_ADD_SET},
+        {BfInstruction.MOVE, BfInstruction.LOOP_START, BfInstruction.MOVE_LOOP_START},
+        {BfInstruction.MOVE, BfInstruction.LOOP_END, BfInstruction.MOVE_LOOP_END},
+        {BfInstruction.ADD, BfInstruction.LOOP_END, BfInstruction.ADD_LOOP_END},
+        {BfInstruction.LOOP_END, BfInstruction.MOVE, BfInstruction.LOOP_END_MOVE}
+    };
+    /**
+     * The number of opcodes which can be the first or the second of a pair
+     */
+    private static final int N_OPCODES = BfInstruction.GUARDED_SCAN_LEFT + 1;
+    /**
+     * Superinstruction indexed by {@code first * N_OPCODES + second} (-1 if the pair has no superinstruction)
+     */
+    private static final byte[] TABLE = new byte[N_OPCODES * N_OPCODES];
+
+    static {
+        Arrays.fill(TABLE, (byte) -1);
+        for (byte[] pair : PAIRS) {
+            TABLE[pair[0] * N_OPCODES + pair[1]] = pair[2];
+        }
+    }
+
+    /**
+     * This class is not instantiable
+     */
+    private BfSuperinstructions() {
+    }
+
+    /**
+     * Select superinstructions of IR-code and set them to {@link BfIRCode#setDispatchOpcodes(byte[])},
+     * and to {@link BfIRCode#setGuardedOpcodes(byte[])} if the IR-code has guarded opcodes.
+     * @param ircode  Complete IR-code
+     * @return  {@code ircode}
+     */
+    static BfIRCode select(BfIRCode ircode) {
+        ircode.setDispatchOpcodes(fuse(ircode.getOpcodes()));
+        if (ircode.getGuardedOpcodes() != null) {
+            ircode.setGuardedOpcodes(fuse(ircode.getGuardedOpcodes()));
+        }
+        return ircode;
+    }
+
+    /**
+     * Replace the first instruction of each pair with a superinstruction.
+     * Every instruction is considered independently, so a superinstruction may overlap the next one;
+     * it is harmless because the second half of a superinstruction is executed by its own opcode.
+     * @param opcodes  Opcodes without superinstructions
+     * @return  Opcodes with superinstructions
+     */
+    private static byte[] fuse(byte[] opcodes) {
+        byte[] fusedOpcodes = opcodes.clone();
+        for (int i = 0; i < opcodes.length - 1; i++) {
+            byte fused = TABLE[opcodes[i] * N_OPCODES + opcodes[i + 1]];
+            if (fused >= 0) {
+                fusedOpcodes[i] = fused;
+            }
+        }
+        return fusedOpcodes;
+    }
+}
@@ -0,0 +1,216 @@
+package org.koturn.brainfuck;
+
+/**
+ * Runtime heap which grows on demand.
+ * The heap is a contiguous array which is extended by whole pages to both sides when the pointer leaves it,
+ * so memory usage is proportional to the range of touched cells rather than to the maximum heap size.
+ * Cells are {@code byte[]}, {@code short[]} or {@code int[]} depending on the cell width,
+ * and interpreters specialized for each width keep the array returned by {@link #getByteCells()},
+ * {@link #getShortCells()} or {@link #getIntCells()} and the pointer in local variables,
+ * and call {@link #reserve(int, int, int)} only when the pointer may leave the array.
+ */
+final class BfTape {
+    /**
+     * Allocation unit of the heap
+     */
+    static final int PAGE_SIZE = 4096;
+
+    /**
+     * Allocated cells ({@code byte[]}, {@code short[]} or {@code int[]})
+     */
+    private Object cells;
+    /**
+     * Number of allocated cells
+     */
+    private int length;
+    /**
+     * Index of the initial cell in {@link #cells}
+     */
+    private int origin;
+    /**
+     * Maximum number of cells
+     */
+    private final int maxSize;
+    /**
+     * Bit width of each cell (8, 16 or 32)
+     */
+    private final int cellBits;
+
+    /**
+     * Create a heap whose initial cell is at index zero
+     * @param maxSize   Maximum number of cells
+     * @param cellBits  Bit width of each cell (8, 16 or 32)
+     */
+    BfTape(int maxSize, int cellBits) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Heap size must be positive: " + maxSize);
+        }
+        this.cellBits = cellBits;
+        this.length = Math.min(PAGE_SIZE, maxSize);
+        this.cells = allocate(length);
+        this.origin = 0;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get allocated 8-bit cells.
+     * The returned array is replaced every time the heap grows.
+     * @return  Allocated cells
+     */
+    byte[] getByteCells() {
+        return (byte[]) cells;
+    }
+
+    /**
+     * Get allocated 16-bit cells.
+     * The returned array is replaced every time the heap grows.
+     * @return  Allocated cells
+     */
+    short[] getShortCells() {
+        return (short[]) cells;
+    }
+
+    /**
+     * Get allocated 32-bit cells.
+     * The returned array is replaced every time the heap grows.
+     * @return  Allocated cells
+     */
+    int[] getIntCells() {
+        return (int[]) cells;
+    }
+
+    /**
+     * Read a cell regardless of the cell width.
+     * This is slower than accessing the array directly, so it is only for the profiler.
+     * @param index  Index of allocated cells
+     * @return  Value of the cell (sign-extended)
+     */
+    int get(int index) {
+        switch (cellBits) {
+            case 16:
+                return ((short[]) cells)[index];
+            case 32:
+                return ((int[]) cells)[index];
+            default:
+                return ((byte[]) cells)[index];
+        }
+    }
+
+    /**
+     * Write a cell regardless of the cell width.
+     * This is slower than accessing the array directly, so it is only for the profiler.
+     * @param index  Index of allocated cells
+     * @param value  Value to write (truncated to the cell width)
+     */
+    void set(int index, int value) {
+        switch (cellBits) {
+            case 16:
+                ((short[]) cells)[index] = (short) value;
+                break;
+            case 32:
+                ((int[]) cells)[index] = value;
+                break;
+            default:
+                ((byte[]) cells)[index] = (byte) value;
+        }
+    }
+
+    /**
+     * Check whether cells from {@code hp + minOffset} to {@code hp + maxOffset} can be made accessible
+     * without exceeding the maximum size
+     * @param hp         Current pointer (index of allocated cells)
+     * @param minOffset  Minimum offset from the pointer
+     * @param maxOffset  Maximum offset from the pointer
+     * @return  {@code true} if {@link #reserve(int, int, int)} succeeds, otherwise {@code false}
+     */
+    boolean canReserve(int hp, int minOffset, int maxOffset) {
+        long needLeft = Math.max(0L, -((long) hp + minOffset));
+        long needRight = Math.max(0L, (long) hp + maxOffset + 1 - length);
+        return length + needLeft + needRight <= maxSize;
+    }
+
+    /**
+     * Make cells from {@code hp + minOffset} to {@code hp + maxOffset} accessible.
+     * The offsets are a margin which may be wider than the cells actually accessed,
+     * so if the margin doesn't fit in the maximum size, the heap is only grown to the maximum size
+     * and an access out of it is reported by {@link #toOverflow(IndexOutOfBoundsException)}.
+     * @param hp         Current pointer (index of allocated cells)
+     * @param minOffset  Minimum offset from the pointer which will be accessed (not positive)
+     * @param maxOffset  Maximum offset from the pointer which will be accessed (not negative)
+     * @return  New pointer, which is shifted when the heap grows to the left
+     * @throws BrainfuckTapeOverflowException  Throw when the pointer itself is out of the maximum size
+     */
+    int reserve(int hp, int minOffset, int maxOffset) {
+        long needLeft = Math.max(0L, -((long) hp + minOffset));
+        long needRight = Math.max(0L, (long) hp + maxOffset + 1 - length);
+        if (needLeft == 0 && needRight == 0) {
+            return hp;
+        }
+        long front;
+        long back;
+        if (length + needLeft + needRight > maxSize) {
+            long pointerLeft = Math.max(0L, -(long) hp);
+            long pointerRight = Math.max(0L, (long) hp + 1 - length);
+            if (length + pointerLeft + pointerRight > maxSize) {
+                throw new BrainfuckTapeOverflowException((long) hp - origin, maxSize);
+            }
+            if (length == maxSize) {
+                return hp;
+            }
+            // Clamp the margin: the pointer gets its cell first, then the left side and the right side get the rest
+            front = Math.max(pointerLeft, Math.min(needLeft, maxSize - length - pointerRight));
+            back = maxSize - length - front;
+        } else {
+            // Grow by at least the current size (amortized O(1)) unless it exceeds the maximum size
+            front = needLeft == 0 ? 0 : Math.max(roundUpToPage(needLeft), length);
+            back = needRight == 0 ? 0 : Math.max(roundUpToPage(needRight), length);
+            if (length + front + back > maxSize) {
+                // Give all the remaining capacity to the side which needs it, so that the heap doesn't grow by a few cells at a time
+                front = needLeft == 0 ? 0 : needRight == 0 ? maxSize - length : needLeft;
+                back = needRight == 0 ? 0 : maxSize - length - front;
+            }
+        }
+        Object newCells = allocate((int) (length + front + back));
+        System.arraycopy(cells, 0, newCells, (int) front, length);
+        cells = newCells;
+        length += (int) (front + back);
+        origin += (int) front;
+        return hp + (int) front;
+    }
+
+    /**
+     * Convert an exception thrown by an access out of allocated cells to the overflow of the heap.
+     * Such an access occurs only after {@link #reserve(int, int, int)} clamped the heap to the maximum size,
+     * so the exception is returned as it is if the heap is smaller than the maximum size.
+     * @param e  Exception thrown by the access
+     * @return  Exception to throw
+     */
+    RuntimeException toOverflow(IndexOutOfBoundsException e) {
+        return length == maxSize ? new BrainfuckTapeOverflowException(maxSize) : e;
+    }
+
+    /**
+     * Allocate an array of cells
+     * @param size  The number of cells
+     * @return  {@code byte[]}, {@code short[]} or {@code int[]} according to {@link #cellBits}
+     */
+    private Object allocate(int size) {
+        switch (cellBits) {
+            case 16:
+                return new short[size];
+            case 32:
+                return new int[size];
+            default:
+                return new byte[size];
+        }
+    }
+
+    /**
+     * Round up to a multiple of {@link #PAGE_SIZE}
+     * @param size  Size
+     * @return  Rounded size
+     */
+    private static long roundUpToPage(long size) {
+        return (size + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+    }
+}
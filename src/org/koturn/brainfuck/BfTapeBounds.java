@@ -0,0 +1,242 @@
+package org.koturn.brainfuck;
+
+import java.util.Arrays;
+
+
+/**
+ * Static inference of the range of the heap pointer, which lets interpreters move the pointer without checking the heap.
+ * <p>
+ * A loop is bounded if its body moves the pointer by zero in total and contains neither scans nor unbounded loops,
+ * so the pointer stays within a fixed range around the position where the loop starts.
+ * Any other loop and every scan move the pointer by an unknown distance.
+ * Code from the start of the program, the start of the body of an unbounded loop, the end of an unbounded loop
+ * or the end of a scan to the next unknown movement is a segment, in which the pointer stays in a range known at compile time.
+ * </p>
+ * <p>
+ * Cells of a whole segment are reserved by a guard at its entry: at the start of the program,
+ * at {@link BfInstruction#GUARDED_SCAN_RIGHT} and {@link BfInstruction#GUARDED_SCAN_LEFT},
+ * and at {@link BfInstruction#GUARDED_LOOP_END}, which reserves cells of both its body and the code after it.
+ * The other movements become {@link BfInstruction#MOVE}, which doesn't check the heap at all,
+ * so a program without unbounded loops and scans is executed with one guard at the start.
+ * </p>
+ */
+final class BfTapeBounds {
+    /**
+     * Maximum absolute value of offsets of a guard.
+     * A program which needs a larger guard is executed only with checked movements because {@code hp + offset} might overflow.
+     */
+    private static final long MAX_GUARD_OFFSET = 1 << 24;
+
+    /**
+     * This class is not instantiable
+     */
+    private BfTapeBounds() {
+    }
+
+    /**
+     * Infer the range of the pointer in each segment and set guards to {@link BfIRCode#setGuards(int, int, int[], int[])}
+     * and opcodes which use them to {@link BfIRCode#setGuardedOpcodes(byte[])}.
+     * Guarded opcodes are not created if a guard is too large.
+     * This must be called before superinstructions are selected.
+     * @param ircode  Complete IR-code
+     * @return  {@code ircode}
+     */
+    static BfIRCode analyze(BfIRCode ircode) {
+        byte[] opcodes = ircode.getOpcodes();
+        int[] operands1 = ircode.getOperands1();
+        int size = ircode.size();
+        int minOffset = ircode.getMinOffset();
+        int maxOffset = ircode.getMaxOffset();
+
+        // Range of the pointer in one iteration of each bounded loop, indexed by its LoopStart
+        boolean[] isBounded = new boolean[size];
+        long[] loopMins = new long[size];
+        long[] loopMaxs = new long[size];
+        inferLoops(opcodes, operands1, size, isBounded, loopMins, loopMaxs);
+
+        // Range of the pointer in each segment, indexed by its first instruction.
+        // A segment only refers to segments which start after it, so they are inferred from the end.
+        long[] segmentMins = new long[size + 1];
+        long[] segmentMaxs = new long[size + 1];
+        boolean[] isSegmentStart = new boolean[size + 1];
+        isSegmentStart[0] = true;
+        for (int pc = 0; pc < size; pc++) {
+            if (opcodes[pc] == BfInstruction.SCAN_RIGHT || opcodes[pc] == BfInstruction.SCAN_LEFT) {
+                isSegmentStart[pc + 1] = true;
+            } else if (opcodes[pc] == BfInstruction.LOOP_START && !isBounded[pc]) {
+                isSegmentStart[pc + 1] = true;
+                isSegmentStart[operands1[pc] + 1] = true;
+            }
+        }
+        for (int pc = size; pc >= 0; pc--) {
+            if (isSegmentStart[pc]) {
+                inferSegment(opcodes, operands1, size, pc, isBounded, loopMins, loopMaxs, segmentMins, segmentMaxs);
+            }
+        }
+
+        // Offsets of cells reserved by each guard, which include offsets of the invariant of the interpreters
+        boolean isGuardable = isGuardable(segmentMins[0], segmentMaxs[0]);
+        int[] guardMinOffsets = new int[size];
+        int[] guardMaxOffsets = new int[size];
+        byte[] guardedOpcodes = opcodes.clone();
+        for (int pc = 0; pc < size && isGuardable; pc++) {
+            long min;
+            long max;
+            switch (opcodes[pc]) {
+                case BfInstruction.NEXT:
+                    guardedOpcodes[pc] = BfInstruction.MOVE;
+                    continue;
+                case BfInstruction.SCAN_RIGHT:
+                    guardedOpcodes[pc] = BfInstruction.GUARDED_SCAN_RIGHT;
+                    min = segmentMins[pc + 1];
+                    max = segmentMaxs[pc + 1];
+                    break;
+                case BfInstruction.SCAN_LEFT:
+                    guardedOpcodes[pc] = BfInstruction.GUARDED_SCAN_LEFT;
+                    min = segmentMins[pc + 1];
+                    max = segmentMaxs[pc + 1];
+                    break;
+                case BfInstruction.LOOP_END:
+                    if (isBounded[operands1[pc]]) {
+                        continue;
+                    }
+                    guardedOpcodes[pc] = BfInstruction.GUARDED_LOOP_END;
+                    min = Math.min(segmentMins[operands1[pc] + 1], segmentMins[pc + 1]);
+                    max = Math.max(segmentMaxs[operands1[pc] + 1], segmentMaxs[pc + 1]);
+                    break;
+                default:
+                    continue;
+            }
+            isGuardable = isGuardable(min, max);
+            guardMinOffsets[pc] = (int) min + minOffset;
+            guardMaxOffsets[pc] = (int) max + maxOffset;
+        }
+        if (isGuardable) {
+            ircode.setGuardedOpcodes(guardedOpcodes);
+            ircode.setGuards((int) segmentMins[0] + minOffset, (int) segmentMaxs[0] + maxOffset, guardMinOffsets, guardMaxOffsets);
+        } else {
+            ircode.setGuardedOpcodes(null);
+        }
+        return ircode;
+    }
+
+    /**
+     * Find bounded loops and the range of the pointer in one iteration of them
+     * @param opcodes    Opcodes
+     * @param operands1  Operand 1 of each instruction
+     * @param size       The number of instructions
+     * @param isBounded  Whether each loop is bounded or not (output, indexed by LoopStart)
+     * @param loopMins   Minimum offset of the pointer from the start of each bounded loop (output, indexed by LoopStart)
+     * @param loopMaxs   Maximum offset of the pointer from the start of each bounded loop (output, indexed by LoopStart)
+     */
+    private static void inferLoops(byte[] opcodes, int[] operands1, int size, boolean[] isBounded, long[] loopMins, long[] loopMaxs) {
+        // Offset of the pointer, its range and boundedness of each open loop (index 0 is the top level)
+        long[] offsets = new long[16];
+        long[] mins = new long[16];
+        long[] maxs = new long[16];
+        boolean[] bounded = new boolean[16];
+        int sp = 0;
+        bounded[0] = true;
+        for (int pc = 0; pc < size; pc++) {
+            switch (opcodes[pc]) {
+                case BfInstruction.NEXT:
+                    offsets[sp] += operands1[pc];
+                    mins[sp] = Math.min(mins[sp], offsets[sp]);
+                    maxs[sp] = Math.max(maxs[sp], offsets[sp]);
+                    break;
+                case BfInstruction.SCAN_RIGHT:
+                case BfInstruction.SCAN_LEFT:
+                    bounded[sp] = false;
+                    break;
+                case BfInstruction.LOOP_START:
+                    if (++sp == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, sp << 1);
+                        mins = Arrays.copyOf(mins, sp << 1);
+                        maxs = Arrays.copyOf(maxs, sp << 1);
+                        bounded = Arrays.copyOf(bounded, sp << 1);
+                    }
+                    offsets[sp] = 0;
+                    mins[sp] = 0;
+                    maxs[sp] = 0;
+                    bounded[sp] = true;
+                    break;
+                case BfInstruction.LOOP_END:
+                    {
+                        int loopStartIdx = operands1[pc];
+                        isBounded[loopStartIdx] = bounded[sp] && offsets[sp] == 0;
+                        loopMins[loopStartIdx] = mins[sp];
+                        loopMaxs[loopStartIdx] = maxs[sp];
+                        sp--;
+                        if (isBounded[loopStartIdx]) {
+                            mins[sp] = Math.min(mins[sp], offsets[sp] + loopMins[loopStartIdx]);
+                            maxs[sp] = Math.max(maxs[sp], offsets[sp] + loopMaxs[loopStartIdx]);
+                        } else {
+                            bounded[sp] = false;
+                        }
+                    }
+                    break;
+                default:
+            }
+        }
+    }
+
+    /**
+     * Infer the range of the pointer in a segment.
+     * The segment ends at a scan, at the end of the enclosing unbounded loop or at the end of the program,
+     * or includes both the body of an unbounded loop and the code after it, which are reached from its LoopStart.
+     * @param opcodes      Opcodes
+     * @param operands1    Operand 1 of each instruction
+     * @param size         The number of instructions
+     * @param start        Index of the first instruction of the segment
+     * @param isBounded    Whether each loop is bounded or not (indexed by LoopStart)
+     * @param loopMins     Minimum offset of the pointer from the start of each bounded loop (indexed by LoopStart)
+     * @param loopMaxs     Maximum offset of the pointer from the start of each bounded loop (indexed by LoopStart)
+     * @param segmentMins  Minimum offset of the pointer in each segment (input of following segments and output of this segment)
+     * @param segmentMaxs  Maximum offset of the pointer in each segment (input of following segments and output of this segment)
+     */
+    private static void inferSegment(byte[] opcodes, int[] operands1, int size, int start, boolean[] isBounded,
+            long[] loopMins, long[] loopMaxs, long[] segmentMins, long[] segmentMaxs) {
+        long offset = 0;
+        long min = 0;
+        long max = 0;
+        loop:
+        for (int pc = start; pc < size; pc++) {
+            switch (opcodes[pc]) {
+                case BfInstruction.NEXT:
+                    offset += operands1[pc];
+                    min = Math.min(min, offset);
+                    max = Math.max(max, offset);
+                    break;
+                case BfInstruction.SCAN_RIGHT:
+                case BfInstruction.SCAN_LEFT:
+                case BfInstruction.LOOP_END:
+                    break loop;
+                case BfInstruction.LOOP_START:
+                    if (isBounded[pc]) {
+                        min = Math.min(min, offset + loopMins[pc]);
+                        max = Math.max(max, offset + loopMaxs[pc]);
+                        pc = operands1[pc];
+                    } else {
+                        int loopEndIdx = operands1[pc];
+                        min = Math.min(min, offset + Math.min(segmentMins[pc + 1], segmentMins[loopEndIdx + 1]));
+                        max = Math.max(max, offset + Math.max(segmentMaxs[pc + 1], segmentMaxs[loopEndIdx + 1]));
+                        break loop;
+                    }
+                    break;
+                default:
+            }
+        }
+        segmentMins[start] = min;
+        segmentMaxs[start] = max;
+    }
+
+    /**
+     * Check whether a guard of the range is small enough
+     * @param min  Minimum offset of the pointer
+     * @param max  Maximum offset of the pointer
+     * @return  {@code true} if the guard can be created, otherwise {@code false}
+     */
+    private static boolean isGuardable(long min, long max) {
+        return min >= -MAX_GUARD_OFFSET && max <= MAX_GUARD_OFFSET;
+    }
+}
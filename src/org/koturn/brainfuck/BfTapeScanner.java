@@ -0,0 +1,162 @@
+package org.koturn.brainfuck;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+
+/**
+ * Zero cell search used by {@link BfInstruction#SCAN_RIGHT} and {@link BfInstruction#SCAN_LEFT}.
+ * Scans with stride one over 8-bit cells examine eight cells at once by reading the heap as {@code long} words.
+ */
+final class BfTapeScanner {
+    /**
+     * View of the heap as little endian {@code long} values
+     */
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    /**
+     * Lower seven bits of each byte in a word
+     */
+    private static final long LOW_BITS = 0x7f7f7f7f7f7f7f7fL;
+
+    /**
+     * This class is not instantiable
+     */
+    private BfTapeScanner() {
+    }
+
+    /**
+     * Find the first zero cell at {@code hp}, {@code hp + stride}, {@code hp + 2 * stride}, ...
+     * @param heap    Runtime heap
+     * @param hp      Heap pointer where the scan starts
+     * @param stride  Distance between examined cells (positive)
+     * @return  Index of the zero cell, or the first index out of the heap if there is no zero cell
+     */
+    static int scanRight(byte[] heap, int hp, int stride) {
+        if (heap[hp] == 0) {
+            return hp;
+        }
+        int i = hp + stride;
+        if (stride == 1) {
+            for (; i <= heap.length - Long.BYTES; i += Long.BYTES) {
+                long zeros = zeroBytes((long) LONG_VIEW.get(heap, i));
+                if (zeros != 0) {
+                    return i + (Long.numberOfTrailingZeros(zeros) >>> 3);
+                }
+            }
+        }
+        for (; i < heap.length; i += stride) {
+            if (heap[i] == 0) {
+                return i;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Find the first zero cell at {@code hp}, {@code hp - stride}, {@code hp - 2 * stride}, ...
+     * @param heap    Runtime heap
+     * @param hp      Heap pointer where the scan starts
+     * @param stride  Distance between examined cells (positive)
+     * @return  Index of the zero cell, or the first index out of the heap if there is no zero cell
+     */
+    static int scanLeft(byte[] heap, int hp, int stride) {
+        if (heap[hp] == 0) {
+            return hp;
+        }
+        int i = hp - stride;
+        if (stride == 1) {
+            for (; i >= Long.BYTES - 1; i -= Long.BYTES) {
+                long zeros = zeroBytes((long) LONG_VIEW.get(heap, i - (Long.BYTES - 1)));
+                if (zeros != 0) {
+                    return i - (Long.numberOfLeadingZeros(zeros) >>> 3);
+                }
+            }
+        }
+        for (; i >= 0; i -= stride) {
+            if (heap[i] == 0) {
+                return i;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Find the first zero cell at {@code hp}, {@code hp + stride}, {@code hp + 2 * stride}, ...
+     * @param heap    Runtime heap
+     * @param hp      Heap pointer where the scan starts
+     * @param stride  Distance between examined cells (positive)
+     * @return  Index of the zero cell, or the first index out of the heap if there is no zero cell
+     */
+    static int scanRight(short[] heap, int hp, int stride) {
+        int i;
+        for (i = hp; i < heap.length; i += stride) {
+            if (heap[i] == 0) {
+                return i;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Find the first zero cell at {@code hp}, {@code hp - stride}, {@code hp - 2 * stride}, ...
+     * @param heap    Runtime heap
+     * @param hp      Heap pointer where the scan starts
+     * @param stride  Distance between examined cells (positive)
+     * @return  Index of the zero cell, or the first index out of the heap if there is no zero cell
+     */
+    static int scanLeft(short[] heap, int hp, int stride) {
+        int i;
+        for (i = hp; i >= 0; i -= stride) {
+            if (heap[i] == 0) {
+                return i;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Find the first zero cell at {@code hp}, {@code hp + stride}, {@code hp + 2 * stride}, ...
+     * @param heap    Runtime heap
+     * @param hp      Heap pointer where the scan starts
+     * @param stride  Distance between examined cells (positive)
+     * @return  Index of the zero cell, or the first index out of the heap if there is no zero cell
+     */
+    static int scanRight(int[] heap, int hp, int stride) {
+        int i;
+        for (i = hp; i < heap.length; i += stride) {
+            if (heap[i] == 0) {
+                return i;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Find the first zero cell at {@code hp}, {@code hp - stride}, {@code hp - 2 * stride}, ...
+     * @param heap    Runtime heap
+     * @param hp      Heap pointer where the scan starts
+     * @param stride  Distance between examined cells (positive)
+     * @return  Index of the zero cell, or the first index out of the heap if there is no zero cell
+     */
+    static int scanLeft(int[] heap, int hp, int stride) {
+        int i;
+        for (i = hp; i >= 0; i -= stride) {
+            if (heap[i] == 0) {
+                return i;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Mark zero bytes in a word.
+     * Unlike the common {@code (x - 0x01..) & ~x & 0x80..} idiom, this doesn't yield false positives,
+     * so both the lowest and the highest marked byte are exact.
+     * @param word  Eight cells
+     * @return  A word whose most significant bit of each byte is set if and only if the byte of {@code word} is zero
+     */
+    private static long zeroBytes(long word) {
+        return ~(((word & LOW_BITS) + LOW_BITS) | word | LOW_BITS);
+    }
+}
@@ -0,0 +1,69 @@
+package org.koturn.brainfuck;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * IR-code of a program and its loops compiled to JVM bytecode during tiered execution.
+ * Compiled loops are shared by all executions of the program, so a hot loop is compiled only once.
+ * Concurrent first requests may compile a loop more than once, which is harmless.
+ */
+final class BfTieredCode {
+    /**
+     * The number of back-edges of a loop in one execution before the loop is compiled
+     */
+    static final int COMPILE_THRESHOLD = 10000;
+    /**
+     * Marker of loops which are too large to compile
+     */
+    private static final BfCompiledLoop NOT_COMPILABLE = (tape, hp, out, in, budget) -> hp;
+
+    /**
+     * Brainfuck IR-code
+     */
+    private final BfIRCode ircode;
+    /**
+     * Bit width of each cell (8, 16 or 32)
+     */
+    private final int cellBits;
+    /**
+     * Compiled loop indexed by its {@link BfInstruction#LOOP_END} ({@code null} until the loop is compiled)
+     */
+    private final AtomicReferenceArray<BfCompiledLoop> loops;
+
+    /**
+     * Ctor
+     * @param ircode    Brainfuck IR-code
+     * @param cellBits  Bit width of each cell (8, 16 or 32)
+     */
+    BfTieredCode(BfIRCode ircode, int cellBits) {
+        this.ircode = ircode;
+        this.cellBits = cellBits;
+        this.loops = new AtomicReferenceArray<>(ircode.size());
+    }
+
+    /**
+     * Getter of {@link #ircode}
+     * @return Value of {@link #ircode}
+     */
+    BfIRCode getIRCode() {
+        return ircode;
+    }
+
+    /**
+     * Get a compiled loop, compiling it at the first call
+     * @param loopEndIdx  Index of {@link BfInstruction#LOOP_END} of the loop
+     * @return  Compiled loop, or {@code null} if the loop is too large to compile
+     */
+    BfCompiledLoop getLoop(int loopEndIdx) {
+        BfCompiledLoop loop = loops.get(loopEndIdx);
+        if (loop == null) {
+            loop = BfJitCompiler.compileLoop(ircode, ircode.getOperands1()[loopEndIdx], cellBits);
+            if (loop == null) {
+                loop = NOT_COMPILABLE;
+            }
+            loops.set(loopEndIdx, loop);
+        }
+        return loop == NOT_COMPILABLE ? null : loop;
+    }
+}
@@ -1,13 +1,17 @@
 package org.koturn.brainfuck;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Stack;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.function.Supplier;
 
 
 /**
@@ -25,7 +29,15 @@ public class Brainfuck {
         /**
          * Execute compiled brainfuck
          */
-        Compiled
+        Compiled,
+        /**
+         * Execute compiled brainfuck after translating it to JVM bytecode
+         */
+        Jit,
+        /**
+         * Execute compiled brainfuck, translating hot loops to JVM bytecode while executing it
+         */
+        Tiered
     }
 
     /**
@@ -33,297 +45,625 @@ public class Brainfuck {
      */
     private static final int BUFFER_SIZE = 65536;
     /**
-     * Heap size for brainfuck execution
+     * Default maximum heap size for brainfuck execution.
+     * The heap grows on demand, so only touched pages are allocated.
      */
-    private static final int DEFAULT_HEAP_SIZE = 65536;
+    public static final int DEFAULT_HEAP_SIZE = 1 << 28;
     /**
-     * Character-BfInstruction conversion map
+     * Default bit width of each cell
      */
-    private static final HashMap<Byte, BfInstruction.InstructionType> InstructionMap = new HashMap<>();
-
-    static {
-        InstructionMap.put((byte)'+', BfInstruction.InstructionType.Add);
-        InstructionMap.put((byte)'-', BfInstruction.InstructionType.Sub);
-        InstructionMap.put((byte)'>', BfInstruction.InstructionType.Next);
-        InstructionMap.put((byte)'<', BfInstruction.InstructionType.Prev);
-        InstructionMap.put((byte)'.', BfInstruction.InstructionType.Putchar);
-        InstructionMap.put((byte)',', BfInstruction.InstructionType.Getchar);
-        InstructionMap.put((byte)'[', BfInstruction.InstructionType.LoopStart);
-        InstructionMap.put((byte)']', BfInstruction.InstructionType.LoopEnd);
-    }
+    public static final int DEFAULT_CELL_BITS = 8;
+    /**
+     * Default optimize level
+     */
+    public static final int DEFAULT_OPTIMIZE_LEVEL = 1;
+    /**
+     * Maximum optimize level
+     */
+    public static final int MAX_OPTIMIZE_LEVEL = 3;
+    /**
+     * Initial capacity of the loop stack used in {@link #buildJumpTable(byte[])}
+     */
+    private static final int LOOP_STACK_SIZE = 64;
+    /**
+     * Suffix of precompiled IR-code file name which is appended to the source file name
+     */
+    public static final String IR_FILE_SUFFIX = ".ir";
 
     /**
      * Brainfuck source code
      */
     private byte[] bfSource;
     /**
-     * Brainfuck IR-code
+     * Index of the matching bracket for each bracket in {@link #bfSource} ({@code null} until it is needed
+     * if the program is loaded by {@link #loadPrecompiled(String)})
      */
-    private ArrayList<BfInstruction> ircode;
+    private int[] jumpTable;
+    /**
+     * Current program
+     */
+    private BrainfuckProgram program;
+    /**
+     * Output destination ({@code null} means {@link System#out})
+     */
+    private BrainfuckOutput output;
+    /**
+     * Input source ({@code null} means {@link System#in})
+     */
+    private BrainfuckInput input;
     /**
      * Execution mode
      */
     private ExecuteMode mode;
+    /**
+     * Bit width of each cell (8, 16 or 32)
+     */
+    private int cellBits;
+    /**
+     * Cache of compiled programs ({@code null} means programs are not cached)
+     */
+    private BrainfuckProgramCache programCache;
+    /**
+     * Optimize level used when compiling (from 1 to {@link #MAX_OPTIMIZE_LEVEL})
+     */
+    private int optimizeLevel;
+    /**
+     * Destination of statistics of compilation ({@code null} means statistics are not shown)
+     */
+    private PrintStream verbose;
+    /**
+     * Limit of each execution
+     */
+    private BrainfuckLimit limit;
+    /**
+     * Whether {@link #loadPrecompiled(String)} reads and writes IR-code files or not
+     */
+    private boolean isIRCodeFileEnabled;
 
     /**
      * Ctor
      */
     public Brainfuck() {
+        cellBits = DEFAULT_CELL_BITS;
+        optimizeLevel = DEFAULT_OPTIMIZE_LEVEL;
+        limit = BrainfuckLimit.NONE;
+        isIRCodeFileEnabled = true;
     }
 
     /**
      * Load brainfuck source code from a file
      * @param filepath  Path to brainfuck source code
      * @throws IOException  Throw when something error is occured while reading a file
+     * @throws BrainfuckSyntaxException  Throw when brackets are unbalanced
      */
     public void load(String filepath) throws IOException {
-        bfSource = Files.readAllBytes(Paths.get(filepath));
-        mode = ExecuteMode.Normal;
+        setSource(Files.readAllBytes(Paths.get(filepath)));
+    }
+
+    /**
+     * Load brainfuck source code from a file and compile it, using its precompiled IR-code file if possible.
+     * The IR-code file is the source file name followed by {@link #IR_FILE_SUFFIX}.
+     * If it holds IR-code compiled from the same source code, it is memory-mapped instead of parsing and compiling the source code.
+     * Otherwise the source code is compiled while it is read, as {@link #compile(InputStream)} does,
+     * and the IR-code file is (re)written; failure of writing it is ignored.
+     * An IR-code file which is broken or can't be read is also ignored and rewritten.
+     * IR-code files are neither read nor written if they are disabled by {@link #setIRCodeFileEnabled(boolean)}.
+     * The source code is never kept in memory, so the loaded program can't be executed in {@link ExecuteMode#Normal} mode.
+     * @param filepath  Path to brainfuck source code
+     * @throws IOException  Throw when something error is occured while reading a file
+     * @throws BrainfuckSyntaxException  Throw when brackets are unbalanced
+     */
+    public void loadPrecompiled(String filepath) throws IOException {
+        Path path = Paths.get(filepath);
+        MessageDigest md = BrainfuckProgramCache.newDigest();
+        try (InputStream is = Files.newInputStream(path)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int nBytes;
+            while ((nBytes = is.read(buffer)) >= 0) {
+                md.update(buffer, 0, nBytes);
+            }
+        }
+        byte[] digest = md.digest();
+        Path irPath = Paths.get(filepath + IR_FILE_SUFFIX);
+        BfIRCode precompiled = isIRCodeFileEnabled ? readIRCodeFile(irPath, digest) : null;
+        this.bfSource = null;
+        this.jumpTable = null;
+        if (precompiled == null) {
+            try (InputStream is = Files.newInputStream(path)) {
+                compile(digest, () -> {
+                    try {
+                        long start = System.nanoTime();
+                        return optimize(compileStream(is, null), start);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (isIRCodeFileEnabled) {
+                try {
+                    BfIRCodeFile.write(irPath, digest, optimizeLevel, program.getIRCode());
+                } catch (IOException e) {
+                    // The IR-code file is only for faster startup
+                }
+            }
+        } else {
+            compile(digest, () -> precompiled);
+        }
+    }
+
+    /**
+     * Read IR-code of the current optimize level from an IR-code file
+     * @param irPath  Path to the IR-code file
+     * @param digest  SHA-256 digest of the source code
+     * @return  IR-code, or {@code null} if the file doesn't hold IR-code of the source code or it can't be read
+     */
+    private BfIRCode readIRCodeFile(Path irPath, byte[] digest) {
+        try {
+            return BfIRCodeFile.read(irPath, digest, optimizeLevel);
+        } catch (IOException e) {
+            // The IR-code file is only for faster startup, so the source code is compiled instead
+            return null;
+        }
     }
 
     /**
      * Load brainfuck soruce code from specified InputStream
      * @param is  InputStream of brainfuck source code
      * @throws IOException  Throw when something error is occured while reading {@code InputStream}
+     * @throws BrainfuckSyntaxException  Throw when brackets are unbalanced
      */
     public void load(InputStream is) throws IOException {
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        byte [] buffer = new byte[BUFFER_SIZE];
-        int nBytes;
-        while ((nBytes = is.read(buffer)) >= 0) {
-            os.write(buffer, 0, nBytes);
-        }
-        bfSource = os.toByteArray();
-        mode = ExecuteMode.Normal;
+        setSource(is.readAllBytes());
     }
 
     /**
      * Load brainfuck source code from a String
      * @param bfSource  Brainfuck source code
+     * @throws BrainfuckSyntaxException  Throw when brackets are unbalanced
      */
     public void loadString(String bfSource) {
-        this.bfSource = bfSource.getBytes();
-        mode = ExecuteMode.Normal;
+        setSource(bfSource.getBytes());
     }
 
     /**
-     * Compile brainfuck source code to IR-code
+     * Compile brainfuck source code to IR-code.
+     * If a program cache is set and it holds the same program compiled with the same options,
+     * the cached IR-code (and JVM bytecode if any) is used instead of compiling again.
+     * @return  Compiled program, which is immutable and can be executed on many threads concurrently
+     * @see #setProgramCache(BrainfuckProgramCache)
      */
-    public void compile() {
-        Stack<Integer> loopStack = new Stack<>();
-        ircode = new ArrayList<>(bfSource.length >> 1);
-        for (int i = 0; i < bfSource.length; i++) {
-            switch (bfSource[i]) {
-                case '+':
-                case '-':
-                case '>':
-                case '<':
-                    {
-                        int cnt = countConsecutiveCharacters(bfSource[i], bfSource, i + 1);
-                        ircode.add(new BfInstruction(InstructionMap.get(bfSource[i]), cnt + 1));
-                        i += cnt;
-                    }
-                    break;
-                case '.':
-                case ',':
-                    ircode.add(new BfInstruction(InstructionMap.get(bfSource[i])));
-                    break;
-                case '[':
-                    if (i + 2 < bfSource.length && bfSource[i + 1] == '-' && bfSource[i + 2] == ']') {
-                        ircode.add(new BfInstruction(BfInstruction.InstructionType.AssignZero));
-                        i += 2;
-                    } else {
-                        loopStack.push(ircode.size());
-                        ircode.add(new BfInstruction(BfInstruction.InstructionType.LoopStart));
-                    }
-                    break;
-                case ']':
-                    {
-                        int loopStartIdx = loopStack.pop();
-                        ircode.get(loopStartIdx).setValue1(ircode.size());
-                        ircode.add(new BfInstruction(BfInstruction.InstructionType.LoopEnd, loopStartIdx));
-                    }
-                    break;
+    public BrainfuckProgram compile() {
+        return compile(null, () -> {
+            long start = System.nanoTime();
+            return optimize(BfCompiler.compile(bfSource), start);
+        });
+    }
+
+    /**
+     * Compile brainfuck source code read from specified InputStream without keeping the source code in memory.
+     * The source code is read in chunks and each chunk is translated to IR-code as soon as it is read,
+     * so comments and whitespace never occupy memory and sources larger than memory can be compiled.
+     * The compiled program becomes current program, but it can't be executed in {@link ExecuteMode#Normal} mode
+     * and its profile has no source positions because the source code is not kept.
+     * @param is  InputStream of brainfuck source code
+     * @return  Compiled program, which is immutable and can be executed on many threads concurrently
+     * @throws IOException  Throw when something error is occured while reading {@code InputStream}
+     * @throws BrainfuckSyntaxException  Throw when brackets are unbalanced
+     */
+    public BrainfuckProgram compile(InputStream is) throws IOException {
+        MessageDigest md = programCache == null ? null : BrainfuckProgramCache.newDigest();
+        long start = System.nanoTime();
+        BfIRCode ircode = compileStream(is, md);
+        this.bfSource = null;
+        this.jumpTable = null;
+        return compile(md == null ? null : md.digest(), () -> optimize(ircode, start));
+    }
+
+    /**
+     * Get current program.
+     * The program is not compiled until {@link #compile()} is called.
+     * @return  Current program, or {@code null} if no source code is loaded
+     */
+    public BrainfuckProgram getProgram() {
+        return program;
+    }
+
+    /**
+     * Create a program from IR-code given by {@code compiler}, or get cached one if the program cache holds the same program.
+     * Guards of the heap are inferred and superinstructions are selected as the last steps of compilation.
+     * @param digest    SHA-256 digest of the source code ({@code null} means it is not computed yet)
+     * @param compiler  Function which returns IR-code of the source code
+     * @return  Compiled program
+     */
+    private BrainfuckProgram compile(byte[] digest, Supplier<BfIRCode> compiler) {
+        if (programCache == null) {
+            program = new BrainfuckProgram(bfSource, jumpTable, BfSuperinstructions.select(BfTapeBounds.analyze(compiler.get())), cellBits);
+        } else {
+            if (digest == null) {
+                digest = BrainfuckProgramCache.digest(bfSource);
             }
+            program = programCache.get(digest, cellBits, optimizeLevel, bfSource != null,
+                    () -> new BrainfuckProgram(bfSource, jumpTable, BfSuperinstructions.select(BfTapeBounds.analyze(compiler.get())), cellBits));
         }
         mode = ExecuteMode.Compiled;
+        return program;
+    }
+
+    /**
+     * Apply optimization passes of {@link #optimizeLevel} to translated IR-code
+     * @param ircode  IR-code translated by {@link BfCompiler}
+     * @param start   Time when the translation started ({@link System#nanoTime()})
+     * @return  Optimized IR-code
+     */
+    private BfIRCode optimize(BfIRCode ircode, long start) {
+        if (verbose != null) {
+            BfPassManager.reportTranslation(verbose, ircode.size(), System.nanoTime() - start);
+        }
+        return BfPassManager.run(ircode, optimizeLevel, verbose);
+    }
+
+    /**
+     * Translate brainfuck source code read from an InputStream to IR-code chunk by chunk
+     * @param is  InputStream of brainfuck source code
+     * @param md  Digest which is updated with the source code ({@code null} if it is not needed)
+     * @return  Brainfuck IR-code without source positions
+     * @throws IOException  Throw when something error is occured while reading {@code InputStream}
+     * @throws BrainfuckSyntaxException  Throw when brackets are unbalanced
+     */
+    private static BfIRCode compileStream(InputStream is, MessageDigest md) throws IOException {
+        BfCompiler compiler = new BfCompiler(BUFFER_SIZE, false);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int nBytes;
+        while ((nBytes = is.read(buffer)) >= 0) {
+            compiler.compile(buffer, 0, nBytes);
+            if (md != null) {
+                md.update(buffer, 0, nBytes);
+            }
+        }
+        return compiler.finish();
+    }
+
+    /**
+     * Set optimize level used by following compilation.
+     * <ul>
+     *   <li>1: Translate to IR-code, folding runs of commands, pointer movement, clear loops, scan loops and multiply loops</li>
+     *   <li>2: Also combine updates of the same cell in straight-line code</li>
+     *   <li>3: Also execute the program up to the first input at compile time,
+     *       and remove loops and assignments which are known to have no effect</li>
+     * </ul>
+     * @param optimizeLevel  Optimize level (from 1 to {@link #MAX_OPTIMIZE_LEVEL})
+     * @throws IllegalArgumentException  Throw when {@code optimizeLevel} is out of range
+     */
+    public void setOptimizeLevel(int optimizeLevel) {
+        if (optimizeLevel < 1 || optimizeLevel > MAX_OPTIMIZE_LEVEL) {
+            throw new IllegalArgumentException("Optimize level must be from 1 to " + MAX_OPTIMIZE_LEVEL + ": " + optimizeLevel);
+        }
+        this.optimizeLevel = optimizeLevel;
+    }
+
+    /**
+     * Get optimize level
+     * @return  Optimize level
+     */
+    public int getOptimizeLevel() {
+        return optimizeLevel;
+    }
+
+    /**
+     * Set destination of statistics of compilation.
+     * The number of instructions and elapsed time of the translation and each optimization pass are written to it.
+     * @param verbose  Destination of statistics ({@code null} means statistics are not shown)
+     */
+    public void setVerbose(PrintStream verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Get destination of statistics of compilation
+     * @return  Destination of statistics, or {@code null} if it is not set
+     */
+    public PrintStream getVerbose() {
+        return verbose;
+    }
+
+    /**
+     * Set cache of compiled programs.
+     * A cache can be shared by many instances, even if they are used on different threads.
+     * @param programCache  Cache of compiled programs ({@code null} disables caching)
+     */
+    public void setProgramCache(BrainfuckProgramCache programCache) {
+        this.programCache = programCache;
+    }
+
+    /**
+     * Get cache of compiled programs
+     * @return  Cache of compiled programs, or {@code null} if it is not set
+     */
+    public BrainfuckProgramCache getProgramCache() {
+        return programCache;
+    }
+
+    /**
+     * Set bit width of each cell.
+     * Cells wrap around at {@code 2^cellBits}, {@code '.'} writes the lowest 8 bits of a cell
+     * and {@code ','} stores -1 at the end of input.
+     * @param cellBits  Bit width of each cell (8, 16 or 32)
+     * @throws IllegalArgumentException  Throw when {@code cellBits} is not 8, 16 nor 32
+     */
+    public void setCellBits(int cellBits) {
+        if (cellBits != 8 && cellBits != 16 && cellBits != 32) {
+            throw new IllegalArgumentException("Cell bits must be 8, 16 or 32: " + cellBits);
+        }
+        this.cellBits = cellBits;
+        if (program != null) {
+            program = program.withCellBits(cellBits);
+        }
+    }
+
+    /**
+     * Get bit width of each cell
+     * @return  Bit width of each cell
+     */
+    public int getCellBits() {
+        return cellBits;
+    }
+
+    /**
+     * Enable or disable IR-code files of {@link #loadPrecompiled(String)}.
+     * They are enabled by default.
+     * @param isIRCodeFileEnabled  {@code true} to read and write IR-code files next to source files, {@code false} to always compile
+     */
+    public void setIRCodeFileEnabled(boolean isIRCodeFileEnabled) {
+        this.isIRCodeFileEnabled = isIRCodeFileEnabled;
+    }
+
+    /**
+     * Check whether IR-code files of {@link #loadPrecompiled(String)} are enabled or not
+     * @return  {@code true} if IR-code files are read and written, otherwise {@code false}
+     */
+    public boolean isIRCodeFileEnabled() {
+        return isIRCodeFileEnabled;
+    }
+
+    /**
+     * Set limit of following executions.
+     * A program which exceeds the limit is stopped, and the status of its result tells which limit is exceeded.
+     * @param limit  Limit of each execution ({@code null} means {@link BrainfuckLimit#NONE})
+     */
+    public void setLimit(BrainfuckLimit limit) {
+        this.limit = limit == null ? BrainfuckLimit.NONE : limit;
+    }
+
+    /**
+     * Get limit of each execution
+     * @return  Limit of each execution
+     */
+    public BrainfuckLimit getLimit() {
+        return limit;
+    }
+
+    /**
+     * Set output destination.
+     * If output destination is not set, output is written to {@link System#out} through a buffer of
+     * {@link BrainfuckOutput#DEFAULT_BUFFER_SIZE} bytes.
+     * @param output  Output destination ({@code null} means {@link System#out})
+     */
+    public void setOutput(BrainfuckOutput output) {
+        this.output = output;
+    }
+
+    /**
+     * Set input source.
+     * If input source is not set, input is read from {@link System#in} through a buffer of
+     * {@link BrainfuckInput#DEFAULT_BUFFER_SIZE} bytes, and output is flushed before waiting for input
+     * only if a console is attached.
+     * @param input  Input source ({@code null} means {@link System#in})
+     */
+    public void setInput(BrainfuckInput input) {
+        this.input = input;
+    }
+
+    /**
+     * Execute brainfuck with specified input source and output destination.
+     * This method doesn't touch {@link System#in} and {@link System#out}, so many programs can be executed
+     * concurrently with their own {@link Brainfuck} instances.
+     * The execution is stopped when it exceeds the limit set by {@link #setLimit(BrainfuckLimit)}.
+     * @param heapSize  Maximum runtime heap size
+     * @param mode      Execution mode
+     * @param in        Input source
+     * @param out       Output destination (flushed before this method returns)
+     * @return  Result of the execution (its output is {@code null})
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     * @throws BrainfuckTapeOverflowException  Throw when the program uses more cells than {@code heapSize}
+     */
+    public BrainfuckResult execute(int heapSize, ExecuteMode mode, BrainfuckInput in, BrainfuckOutput out) throws IOException {
+        return prepare(mode).execute(heapSize, mode, limit, in, out);
+    }
+
+    /**
+     * Execute brainfuck with specified input and output streams
+     * @param heapSize  Maximum runtime heap size
+     * @param mode      Execution mode
+     * @param is        Input stream
+     * @param os        Output stream (flushed before this method returns)
+     * @return  Result of the execution (its output is {@code null})
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     * @see #execute(int, ExecuteMode, BrainfuckInput, BrainfuckOutput)
+     */
+    public BrainfuckResult execute(int heapSize, ExecuteMode mode, InputStream is, OutputStream os) throws IOException {
+        return execute(heapSize, mode, new BrainfuckInput(is), new BrainfuckOutput(os));
+    }
+
+    /**
+     * Execute brainfuck with in-memory input and return its output
+     * @param heapSize  Maximum runtime heap size
+     * @param mode      Execution mode
+     * @param input     Input of the program (its position is not modified)
+     * @return  Result of the execution which holds the output
+     * @throws IOException  Never thrown unless the program itself is broken
+     * @see #execute(int, ExecuteMode, BrainfuckInput, BrainfuckOutput)
+     */
+    public BrainfuckResult execute(int heapSize, ExecuteMode mode, ByteBuffer input) throws IOException {
+        return prepare(mode).execute(heapSize, mode, limit, input);
+    }
+
+    /**
+     * Execute brainfuck with in-memory input and return its output
+     * @param heapSize  Maximum runtime heap size
+     * @param mode      Execution mode
+     * @param input     Input of the program
+     * @return  Result of the execution which holds the output
+     * @throws IOException  Never thrown unless the program itself is broken
+     * @see #execute(int, ExecuteMode, ByteBuffer)
+     */
+    public BrainfuckResult execute(int heapSize, ExecuteMode mode, byte[] input) throws IOException {
+        return execute(heapSize, mode, ByteBuffer.wrap(input));
     }
 
     /**
      * Execute brainfuck.
-     * @param heapSize  Runtime heap size
+     * Input and output are {@link #setInput(BrainfuckInput)} and {@link #setOutput(BrainfuckOutput)},
+     * or {@link System#in} and {@link System#out} if they are not set.
+     * @param heapSize  Maximum runtime heap size
      * @param mode      Execution mode
-     * @throws IOException  Throw when something error is occured while reading from stdin
-     */
-    public void execute(int heapSize, ExecuteMode mode) throws IOException {
-        switch (mode) {
-            case Normal:
-                executeNormal(heapSize);
-                break;
-            case Compiled:
-                if (this.mode == ExecuteMode.Normal) {
-                    compile();
-                }
-                executeIR(heapSize);
-                break;
-        }
+     * @return  Result of the execution (its output is {@code null})
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     * @see #execute(int, ExecuteMode, BrainfuckInput, BrainfuckOutput)
+     */
+    public BrainfuckResult execute(int heapSize, ExecuteMode mode) throws IOException {
+        BrainfuckOutput out = resolveOutput();
+        return execute(heapSize, mode, resolveInput(out), out);
     }
 
     /**
      * Execute brainfuck with {@code heapSize}.
-     * @param heapSize  Runtime heap size
-     * @throws IOException  Throw when something error is occured while reading from stdin
+     * @param heapSize  Maximum runtime heap size
+     * @return  Result of the execution (its output is {@code null})
+     * @throws IOException  Throw when something error is occured while reading input or writing output
      * @see #execute(int, ExecuteMode)
      */
-    public void execute(int heapSize) throws IOException {
-        execute(heapSize, mode);
+    public BrainfuckResult execute(int heapSize) throws IOException {
+        return execute(heapSize, mode);
     }
 
     /**
      * Execute brainfuck with {@link #DEFAULT_HEAP_SIZE}.
      * @param mode  Execution mode
-     * @throws IOException  Throw when something error is occured while reading from stdin
+     * @return  Result of the execution (its output is {@code null})
+     * @throws IOException  Throw when something error is occured while reading input or writing output
      * @see #execute(int, ExecuteMode)
      */
-    public void execute(ExecuteMode mode) throws IOException {
-        execute(DEFAULT_HEAP_SIZE, mode);
+    public BrainfuckResult execute(ExecuteMode mode) throws IOException {
+        return execute(DEFAULT_HEAP_SIZE, mode);
     }
 
     /**
      * Execute brainfuck with {@link #DEFAULT_HEAP_SIZE}.
-     * @throws IOException  Throw when something error is occured while reading from stdin
+     * @return  Result of the execution (its output is {@code null})
+     * @throws IOException  Throw when something error is occured while reading input or writing output
      * @see #execute(int, ExecuteMode)
      */
-    public void execute() throws IOException {
-        execute(DEFAULT_HEAP_SIZE, mode);
+    public BrainfuckResult execute() throws IOException {
+        return execute(DEFAULT_HEAP_SIZE, mode);
     }
 
     /**
-     * Execute brainfuck source code directly
-     * @param heapSize  Runtime heap size
-     * @throws IOException  Throw when something error is occured while reading from stdin
+     * Execute compiled brainfuck counting executions of each instruction.
+     * The program is compiled if it is not compiled yet.
+     * Input and output are same as {@link #execute(int, ExecuteMode)}.
+     * The execution is stopped when it exceeds the limit set by {@link #setLimit(BrainfuckLimit)}.
+     * @param heapSize  Maximum runtime heap size
+     * @return  Profile of the execution
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     * @throws BrainfuckTapeOverflowException  Throw when the program uses more cells than {@code heapSize}
+     * @see BrainfuckProgram#profile(int, BrainfuckLimit, BrainfuckInput, BrainfuckOutput)
      */
-    private void executeNormal(int heapSize) throws IOException {
-        byte[] heap = new byte[heapSize];
-        int hp = 0;
-        for (int pc = 0; pc < bfSource.length; pc++) {
-            switch (bfSource[pc]) {
-                case '+':
-                    heap[hp]++;
-                    break;
-                case '-':
-                    heap[hp]--;
-                    break;
-                case '>':
-                    hp++;
-                    break;
-                case '<':
-                    hp--;
-                    break;
-                case '.':
-                    System.out.write(heap[hp]);
-                    break;
-                case ',':
-                    System.out.flush();
-                    heap[hp] = (byte) System.in.read();
-                    break;
-                case '[':
-                    if (heap[hp] != 0) {
-                        break;
-                    }
-                    pc++;
-                    for (int depth = 1; depth > 0; pc++) {
-                        switch (bfSource[pc]) {
-                            case '[':
-                                depth++;
-                                break;
-                            case ']':
-                                depth--;
-                                break;
-                        }
-                    }
-                    pc--;
-                    break;
-                case ']':
-                    if (heap[hp] == 0) {
-                        break;
-                    }
-                    pc--;
-                    for (int depth = 1; depth > 0; pc--) {
-                        switch (bfSource[pc]) {
-                            case '[':
-                                depth--;
-                                break;
-                            case ']':
-                                depth++;
-                                break;
-                        }
-                    }
-                    pc++;
-                    break;
-            }
+    public BrainfuckProfile profile(int heapSize) throws IOException {
+        BrainfuckOutput out = resolveOutput();
+        return prepare(ExecuteMode.Compiled).profile(heapSize, limit, resolveInput(out), out);
+    }
+
+    /**
+     * Get output destination
+     * @return  {@link #output}, or a new output to {@link System#out} if it is not set
+     */
+    private BrainfuckOutput resolveOutput() {
+        return output == null ? new BrainfuckOutput(System.out) : output;
+    }
+
+    /**
+     * Get input source
+     * @param out  Output destination which is flushed before waiting for input from a console
+     * @return  {@link #input}, or a new input from {@link System#in} if it is not set
+     */
+    private BrainfuckInput resolveInput(BrainfuckOutput out) {
+        if (input != null) {
+            return input;
+        }
+        BrainfuckInput in = new BrainfuckInput(System.in);
+        if (System.console() != null) {
+            in.tie(out);
+        }
+        return in;
+    }
+
+    /**
+     * Get current program, compiling it if {@code mode} requires IR-code
+     * @param mode  Execution mode
+     * @return  Current program
+     */
+    private BrainfuckProgram prepare(ExecuteMode mode) {
+        if (mode != ExecuteMode.Normal && !program.isCompiled()) {
+            compile();
         }
+        return program;
     }
 
     /**
-     * Execute brainfuck with specified heap size
-     * @param heapSize  Runtime Heap size
-     * @throws IOException  Throw when something error is occured while reading from stdin
+     * Set brainfuck source code and build {@link #jumpTable} for it
+     * @param bfSource  Brainfuck source code
+     * @throws BrainfuckSyntaxException  Throw when brackets are unbalanced
      */
-    private void executeIR(int heapSize) throws IOException {
-        byte[] heap = new byte[heapSize];
-        int hp = 0;
-        BfInstruction inst;
-        for (int pc = 0; pc < ircode.size(); pc++) {
-            switch ((inst = ircode.get(pc)).getType()) {
-                case Add:
-                    heap[hp] += inst.getValue1();
-                    break;
-                case Sub:
-                    heap[hp] -= inst.getValue1();
-                    break;
-                case Next:
-                    hp += inst.getValue1();
-                    break;
-                case Prev:
-                    hp -= inst.getValue1();
-                    break;
-                case Putchar:
-                    System.out.write(heap[hp]);
-                    break;
-                case Getchar:
-                    System.out.flush();
-                    heap[hp] = (byte) System.in.read();
-                    break;
-                case LoopStart:
-                    if (heap[hp] == 0) {
-                        pc = inst.getValue1();
+    private void setSource(byte[] bfSource) {
+        this.jumpTable = buildJumpTable(bfSource);
+        this.bfSource = bfSource;
+        this.program = new BrainfuckProgram(bfSource, jumpTable, null, cellBits);
+        mode = ExecuteMode.Normal;
+    }
+
+    /**
+     * Build a table which maps each bracket position to the position of the matching bracket
+     * @param bfSource  Brainfuck source code
+     * @return  Jump table (elements which correspond to non-bracket characters are zero)
+     * @throws BrainfuckSyntaxException  Throw when brackets are unbalanced
+     */
+    static int[] buildJumpTable(byte[] bfSource) {
+        int[] jumpTable = new int[bfSource.length];
+        int[] loopStack = new int[LOOP_STACK_SIZE];
+        int sp = 0;
+        for (int i = 0; i < bfSource.length; i++) {
+            switch (bfSource[i]) {
+                case '[':
+                    if (sp == loopStack.length) {
+                        loopStack = Arrays.copyOf(loopStack, sp << 1);
                     }
+                    loopStack[sp++] = i;
                     break;
-                case LoopEnd:
-                    if (heap[hp] != 0) {
-                        pc = inst.getValue1();
+                case ']':
+                    if (sp == 0) {
+                        throw new BrainfuckSyntaxException("Unmatched ']'", i);
                     }
+                    int loopStartIdx = loopStack[--sp];
+                    jumpTable[loopStartIdx] = i;
+                    jumpTable[i] = loopStartIdx;
                     break;
-                case AssignZero:
-                    heap[hp] = 0;
-                    break;
-                default:
             }
         }
-        System.out.println();
-    }
-
-    /**
-     * Count how many specified characters are consecutive from specified position
-     * @param c         Target character
-     * @param bfSource  Brainfuck source code
-     * @param from      Count start position
-     * @return  Number of consecutive characters
-     */
-    private int countConsecutiveCharacters(byte c, byte[] bfSource, int from) {
-        int to;
-        for (to = from; to < bfSource.length && bfSource[to] == c; to++);
-        return to - from;
+        if (sp > 0) {
+            throw new BrainfuckSyntaxException("Unmatched '['", loopStack[sp - 1]);
+        }
+        return jumpTable;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,20 @@
+package org.koturn.brainfuck;
+
+/**
+ * An exception throwed from {@link Brainfuck}
+ */
+public class BrainfuckException extends RuntimeException {
+    /**
+     * Null message exception
+     */
+    public BrainfuckException() {
+        super();
+    }
+    /**
+     * Use specified message for exception message
+     * @param msg  Exception message
+     */
+    public BrainfuckException(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,213 @@
+package org.koturn.brainfuck;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+
+/**
+ * Buffered input source of brainfuck programs.
+ * Bytes are read from the underlying stream or channel in bulk, or directly from a memory-mapped file or an in-memory buffer.
+ */
+public final class BrainfuckInput {
+    /**
+     * Default size of the input buffer
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+    /**
+     * Maximum size of one memory-mapped region
+     */
+    private static final long MAX_MAP_SIZE = 1L << 30;
+    /**
+     * Maximum number of consecutive reads of no bytes from a blocking channel before it is regarded as the end of input
+     */
+    private static final int MAX_EMPTY_READS = 16;
+
+    /**
+     * Input buffer (a memory-mapped region for a mapped file, or the source itself for an in-memory buffer)
+     */
+    private ByteBuffer buffer;
+    /**
+     * Source stream ({@code null} if another source is used)
+     */
+    private final InputStream stream;
+    /**
+     * Source channel ({@code null} if another source is used)
+     */
+    private final ReadableByteChannel channel;
+    /**
+     * Memory-mapped file ({@code null} if another source is used)
+     */
+    private final FileChannel mappedFile;
+    /**
+     * Position in {@link #mappedFile} where the next region is mapped
+     */
+    private long mappedPosition;
+    /**
+     * Output which is flushed before blocking to refill the buffer
+     */
+    private Flushable tiedOutput;
+
+    /**
+     * Create input which reads from a stream
+     * @param stream      Source stream
+     * @param bufferSize  Size of the input buffer
+     */
+    public BrainfuckInput(InputStream stream, int bufferSize) {
+        this(stream, null, null, bufferSize);
+    }
+
+    /**
+     * Create input which reads from a stream with {@link #DEFAULT_BUFFER_SIZE}
+     * @param stream  Source stream
+     */
+    public BrainfuckInput(InputStream stream) {
+        this(stream, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create input which reads from a channel
+     * @param channel     Source channel
+     * @param bufferSize  Size of the input buffer
+     */
+    public BrainfuckInput(ReadableByteChannel channel, int bufferSize) {
+        this(null, channel, null, bufferSize);
+    }
+
+    /**
+     * Create input which reads from a channel with {@link #DEFAULT_BUFFER_SIZE}
+     * @param channel  Source channel
+     */
+    public BrainfuckInput(ReadableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create input which reads bytes between the position and the limit of a buffer.
+     * The position of {@code input} is not modified.
+     * @param input  Source buffer
+     */
+    public BrainfuckInput(ByteBuffer input) {
+        this(null, null, null, 1);
+        this.buffer = input.duplicate();
+    }
+
+    /**
+     * Full constructor
+     * @param stream      Source stream
+     * @param channel     Source channel
+     * @param mappedFile  Memory-mapped file
+     * @param bufferSize  Size of the input buffer (ignored for a mapped file)
+     */
+    private BrainfuckInput(InputStream stream, ReadableByteChannel channel, FileChannel mappedFile, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        this.stream = stream;
+        this.channel = channel;
+        this.mappedFile = mappedFile;
+        this.mappedPosition = 0;
+        this.buffer = ByteBuffer.allocate(mappedFile == null ? bufferSize : 0);
+        this.buffer.flip();
+    }
+
+    /**
+     * Create input which reads a file by mapping it into memory.
+     * The file is mapped by regions of at most 1 GiB, so files larger than 2 GiB are also supported.
+     * @param file  Source file (the caller is responsible for closing it)
+     * @return  Input which reads {@code file}
+     */
+    public static BrainfuckInput map(FileChannel file) {
+        return new BrainfuckInput(null, null, file, 1);
+    }
+
+    /**
+     * Flush specified output before blocking to read from the source.
+     * This is intended for interactive execution, where a prompt must be shown before waiting for input.
+     * @param output  Output to flush ({@code null} disables flushing)
+     */
+    public void tie(Flushable output) {
+        this.tiedOutput = output;
+    }
+
+    /**
+     * Read one byte
+     * @return  A byte in the range 0 to 255, or -1 if the end of input is reached
+     * @throws IOException  Throw when something error is occured while reading from the source
+     */
+    public int read() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return buffer.get() & 0xff;
+    }
+
+    /**
+     * Refill {@link #buffer}
+     * @return  {@code true} if at least one byte is available, otherwise {@code false}
+     * @throws IOException  Throw when something error is occured while reading from the source
+     */
+    private boolean fill() throws IOException {
+        if (tiedOutput != null) {
+            tiedOutput.flush();
+        }
+        if (mappedFile != null) {
+            long size = Math.min(mappedFile.size() - mappedPosition, MAX_MAP_SIZE);
+            if (size <= 0) {
+                return false;
+            }
+            buffer = mappedFile.map(FileChannel.MapMode.READ_ONLY, mappedPosition, size);
+            mappedPosition += size;
+            return true;
+        }
+        if (stream == null && channel == null) {
+            return false;
+        }
+        buffer.clear();
+        int nBytes;
+        if (channel != null) {
+            nBytes = readChannel();
+        } else {
+            nBytes = stream.read(buffer.array(), 0, buffer.capacity());
+            if (nBytes > 0) {
+                buffer.position(nBytes);
+            }
+        }
+        buffer.flip();
+        return nBytes > 0;
+    }
+
+    /**
+     * Read bytes from {@link #channel} into {@link #buffer}.
+     * A non-blocking channel is waited for with a selector, and a blocking channel which keeps returning no bytes
+     * is regarded as the end of input, so that reading never spins.
+     * @return  The number of bytes read, or -1 if the end of input is reached
+     * @throws IOException  Throw when something error is occured while reading from the channel
+     */
+    private int readChannel() throws IOException {
+        int nBytes = channel.read(buffer);
+        if (nBytes != 0) {
+            return nBytes;
+        }
+        if (channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking()) {
+            try (Selector selector = Selector.open()) {
+                ((SelectableChannel) channel).register(selector, SelectionKey.OP_READ);
+                while ((nBytes = channel.read(buffer)) == 0) {
+                    selector.select();
+                    selector.selectedKeys().clear();
+                }
+            }
+            return nBytes;
+        }
+        for (int i = 0; i < MAX_EMPTY_READS && nBytes == 0; i++) {
+            nBytes = channel.read(buffer);
+        }
+        return nBytes == 0 ? -1 : nBytes;
+    }
+}
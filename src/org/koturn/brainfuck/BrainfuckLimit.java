@@ -0,0 +1,108 @@
+package org.koturn.brainfuck;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Immutable limit of one execution of a brainfuck program.
+ * A step is one back-edge of a loop, that is, one jump from the end of a loop to its start,
+ * because a program which doesn't terminate always loops.
+ * Instructions between back-edges are not counted, so the number of steps of a program depends on the optimize level,
+ * which may remove or merge loops.
+ * Steps which optimize level 3 executed at compile time are counted at the start of the execution,
+ * so a program which exceeds the limit within them stops before writing any output.
+ * The limit is checked only once in {@link #CHECK_INTERVAL} steps, so a program may run slightly beyond its timeout.
+ */
+public final class BrainfuckLimit {
+    /**
+     * The number of steps between checks of the timeout
+     */
+    public static final int CHECK_INTERVAL = BfBudget.BATCH_SIZE;
+    /**
+     * No limit
+     */
+    public static final BrainfuckLimit NONE = new BrainfuckLimit(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    /**
+     * Maximum number of steps ({@link Long#MAX_VALUE} means unlimited)
+     */
+    private final long maxSteps;
+    /**
+     * Timeout in nanoseconds from the start of the execution ({@link Long#MAX_VALUE} means unlimited)
+     */
+    private final long timeout;
+
+    /**
+     * Ctor
+     * @param maxSteps  Maximum number of steps ({@link Long#MAX_VALUE} means unlimited)
+     * @param timeout   Timeout in nanoseconds ({@link Long#MAX_VALUE} means unlimited)
+     */
+    private BrainfuckLimit(long maxSteps, long timeout) {
+        this.maxSteps = maxSteps;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Create a limit of the number of steps
+     * @param maxSteps  Maximum number of steps
+     * @return  Limit of the number of steps without timeout
+     * @throws IllegalArgumentException  Throw when {@code maxSteps} is negative
+     */
+    public static BrainfuckLimit ofSteps(long maxSteps) {
+        return NONE.withSteps(maxSteps);
+    }
+
+    /**
+     * Create a limit of execution time
+     * @param timeout  Timeout from the start of the execution
+     * @param unit     Unit of {@code timeout}
+     * @return  Limit of execution time without limit of the number of steps
+     * @throws IllegalArgumentException  Throw when {@code timeout} is negative
+     */
+    public static BrainfuckLimit ofTimeout(long timeout, TimeUnit unit) {
+        return NONE.withTimeout(timeout, unit);
+    }
+
+    /**
+     * Create a limit which has the same timeout as this limit and specified maximum number of steps
+     * @param maxSteps  Maximum number of steps
+     * @return  New limit
+     * @throws IllegalArgumentException  Throw when {@code maxSteps} is negative
+     */
+    public BrainfuckLimit withSteps(long maxSteps) {
+        if (maxSteps < 0) {
+            throw new IllegalArgumentException("Maximum number of steps must not be negative: " + maxSteps);
+        }
+        return new BrainfuckLimit(maxSteps, timeout);
+    }
+
+    /**
+     * Create a limit which has the same maximum number of steps as this limit and specified timeout
+     * @param timeout  Timeout from the start of the execution
+     * @param unit     Unit of {@code timeout}
+     * @return  New limit
+     * @throws IllegalArgumentException  Throw when {@code timeout} is negative
+     */
+    public BrainfuckLimit withTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Timeout must not be negative: " + timeout);
+        }
+        return new BrainfuckLimit(maxSteps, unit.toNanos(timeout));
+    }
+
+    /**
+     * Getter of {@link #maxSteps}
+     * @return Value of {@link #maxSteps}
+     */
+    public long getMaxSteps() {
+        return maxSteps;
+    }
+
+    /**
+     * Getter of {@link #timeout}
+     * @return Value of {@link #timeout}
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+}
@@ -0,0 +1,158 @@
+package org.koturn.brainfuck;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+
+/**
+ * Buffered output destination of brainfuck programs.
+ * Bytes are stored into a reusable buffer and written to the underlying channel or stream
+ * only when the buffer is full or {@link #flush()} is called.
+ */
+public final class BrainfuckOutput implements Flushable {
+    /**
+     * Default size of the output buffer
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+
+    /**
+     * Output buffer
+     */
+    private final byte[] bytes;
+    /**
+     * {@link ByteBuffer} which wraps {@link #bytes}
+     */
+    private final ByteBuffer buffer;
+    /**
+     * Destination channel ({@code null} if {@link #stream} is used)
+     */
+    private final WritableByteChannel channel;
+    /**
+     * Destination stream ({@code null} if {@link #channel} is used)
+     */
+    private final OutputStream stream;
+    /**
+     * The number of bytes stored in {@link #bytes}
+     */
+    private int position;
+
+    /**
+     * Create output which writes to a channel
+     * @param channel     Destination channel
+     * @param bufferSize  Size of the output buffer
+     */
+    public BrainfuckOutput(WritableByteChannel channel, int bufferSize) {
+        this(channel, null, bufferSize);
+    }
+
+    /**
+     * Create output which writes to a channel with {@link #DEFAULT_BUFFER_SIZE}
+     * @param channel  Destination channel
+     */
+    public BrainfuckOutput(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create output which writes to a stream.
+     * The stream is flushed every time this output is flushed.
+     * @param stream      Destination stream
+     * @param bufferSize  Size of the output buffer
+     */
+    public BrainfuckOutput(OutputStream stream, int bufferSize) {
+        this(null, stream, bufferSize);
+    }
+
+    /**
+     * Create output which writes to a stream with {@link #DEFAULT_BUFFER_SIZE}
+     * @param stream  Destination stream
+     */
+    public BrainfuckOutput(OutputStream stream) {
+        this(stream, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Full constructor
+     * @param channel     Destination channel
+     * @param stream      Destination stream
+     * @param bufferSize  Size of the output buffer
+     */
+    private BrainfuckOutput(WritableByteChannel channel, OutputStream stream, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        this.bytes = new byte[bufferSize];
+        this.buffer = ByteBuffer.wrap(bytes);
+        this.channel = channel;
+        this.stream = stream;
+        this.position = 0;
+    }
+
+    /**
+     * Write one byte
+     * @param b  A byte to write (upper 24 bits are ignored)
+     * @throws IOException  Throw when something error is occured while writing to the destination
+     */
+    public void write(int b) throws IOException {
+        if (position == bytes.length) {
+            flush();
+        }
+        bytes[position++] = (byte) b;
+    }
+
+    /**
+     * Write bytes
+     * @param b       Bytes to write
+     * @param offset  Start offset in {@code b}
+     * @param length  The number of bytes to write
+     * @throws IOException  Throw when something error is occured while writing to the destination
+     */
+    public void write(byte[] b, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (position == bytes.length) {
+                flush();
+            }
+            int n = Math.min(length, bytes.length - position);
+            System.arraycopy(b, offset, bytes, position, n);
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Write characters of a string as bytes.
+     * This is for JVM bytecode generated by {@link BfJitCompiler}, which keeps constant output in its constant pool.
+     * @param s  Characters to write (upper 8 bits of each character are ignored)
+     * @throws IOException  Throw when something error is occured while writing to the destination
+     */
+    void writeChars(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            if (position == bytes.length) {
+                flush();
+            }
+            bytes[position++] = (byte) s.charAt(i);
+        }
+    }
+
+    /**
+     * Write buffered bytes to the destination
+     * @throws IOException  Throw when something error is occured while writing to the destination
+     */
+    @Override
+    public void flush() throws IOException {
+        if (channel != null) {
+            buffer.clear().limit(position);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } else {
+            stream.write(bytes, 0, position);
+            stream.flush();
+        }
+        position = 0;
+    }
+}
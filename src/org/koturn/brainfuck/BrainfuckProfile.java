@@ -0,0 +1,287 @@
+package org.koturn.brainfuck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+
+/**
+ * Result of a profiled execution created by {@link BrainfuckProgram#profile(int, BrainfuckLimit, BrainfuckInput, BrainfuckOutput)}.
+ * It holds the number of executions of each IR instruction and summarizes them per loop of the source code.
+ * Loops which are compiled to a single multiply instruction are not reported because they have no iterations in IR-code.
+ */
+public final class BrainfuckProfile {
+    /**
+     * Execution profile of one loop
+     */
+    public static final class Loop {
+        /**
+         * Kind of the loop ({@code "Loop"}, {@code "ScanRight"} or {@code "ScanLeft"})
+         */
+        private final String kind;
+        /**
+         * Index of the first IR instruction of the loop
+         */
+        private final int index;
+        /**
+         * Line number of the loop in the source code (1-origin, 0 if unknown)
+         */
+        private final int line;
+        /**
+         * Column number of the loop in the source code (1-origin, 0 if unknown)
+         */
+        private final int column;
+        /**
+         * The number of times the loop is reached
+         */
+        private final long entries;
+        /**
+         * The number of times the loop body is executed
+         */
+        private final long iterations;
+        /**
+         * The number of IR instructions and scanned cells executed in the loop, including nested loops
+         */
+        private final long cost;
+
+        /**
+         * Ctor
+         * @param kind        Kind of the loop
+         * @param index       Index of the first IR instruction of the loop
+         * @param line        Line number of the loop in the source code (1-origin, 0 if unknown)
+         * @param column      Column number of the loop in the source code (1-origin, 0 if unknown)
+         * @param entries     The number of times the loop is reached
+         * @param iterations  The number of times the loop body is executed
+         * @param cost        The number of IR instructions and scanned cells executed in the loop
+         */
+        Loop(String kind, int index, int line, int column, long entries, long iterations, long cost) {
+            this.kind = kind;
+            this.index = index;
+            this.line = line;
+            this.column = column;
+            this.entries = entries;
+            this.iterations = iterations;
+            this.cost = cost;
+        }
+
+        /**
+         * Getter of {@link #kind}
+         * @return Value of {@link #kind}
+         */
+        public String getKind() {
+            return kind;
+        }
+
+        /**
+         * Getter of {@link #index}
+         * @return Value of {@link #index}
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Getter of {@link #line}
+         * @return Value of {@link #line}
+         */
+        public int getLine() {
+            return line;
+        }
+
+        /**
+         * Getter of {@link #column}
+         * @return Value of {@link #column}
+         */
+        public int getColumn() {
+            return column;
+        }
+
+        /**
+         * Getter of {@link #entries}
+         * @return Value of {@link #entries}
+         */
+        public long getEntries() {
+            return entries;
+        }
+
+        /**
+         * Getter of {@link #iterations}
+         * @return Value of {@link #iterations}
+         */
+        public long getIterations() {
+            return iterations;
+        }
+
+        /**
+         * Getter of {@link #cost}
+         * @return Value of {@link #cost}
+         */
+        public long getCost() {
+            return cost;
+        }
+
+        /**
+         * Get the average number of iterations per entry
+         * @return  Average trip count (0 if the loop is never reached)
+         */
+        public double getAverageTripCount() {
+            return entries == 0 ? 0.0 : (double) iterations / entries;
+        }
+    }
+
+    /**
+     * Loops sorted from the hottest one
+     */
+    private final List<Loop> loops;
+    /**
+     * The number of IR instructions and scanned cells executed in the whole program
+     */
+    private final long totalCost;
+    /**
+     * Execution time in nanoseconds
+     */
+    private final long elapsedTime;
+    /**
+     * How the execution ended
+     */
+    private final BrainfuckResult.Status status;
+
+    /**
+     * Summarize execution counts per loop
+     * @param bfSource     Brainfuck source code ({@code null} if it is not kept)
+     * @param ircode       Brainfuck IR-code which was executed
+     * @param counts       The number of executions of each instruction
+     * @param scanSteps    The number of cells skipped by each scan instruction
+     * @param elapsedTime  Execution time in nanoseconds
+     * @param status       How the execution ended
+     */
+    BrainfuckProfile(byte[] bfSource, BfIRCode ircode, long[] counts, long[] scanSteps, long elapsedTime, BrainfuckResult.Status status) {
+        byte[] opcodes = ircode.getOpcodes();
+        int[] operands1 = ircode.getOperands1();
+        int[] sourcePositions = ircode.getSourcePositions();
+        // costs[i] is the total cost of instructions before the i-th instruction
+        long[] costs = new long[opcodes.length + 1];
+        for (int i = 0; i < opcodes.length; i++) {
+            costs[i + 1] = costs[i] + counts[i] + scanSteps[i];
+        }
+        int[] lineStarts = sourcePositions == null || bfSource == null ? null : findLineStarts(bfSource);
+        List<Loop> loops = new ArrayList<>();
+        for (int i = 0; i < opcodes.length; i++) {
+            long iterations;
+            int end;
+            switch (opcodes[i]) {
+                case BfInstruction.LOOP_START:
+                    end = operands1[i];
+                    iterations = counts[end];
+                    break;
+                case BfInstruction.SCAN_RIGHT:
+                case BfInstruction.SCAN_LEFT:
+                    end = i;
+                    iterations = scanSteps[i];
+                    break;
+                default:
+                    continue;
+            }
+            if (counts[i] == 0) {
+                continue;
+            }
+            int line = 0;
+            int column = 0;
+            if (lineStarts != null) {
+                int position = sourcePositions[i];
+                int lineIndex = Arrays.binarySearch(lineStarts, position);
+                if (lineIndex < 0) {
+                    // Not a line start, so it is in the line before the insertion point
+                    lineIndex = -lineIndex - 2;
+                }
+                line = lineIndex + 1;
+                column = position - lineStarts[lineIndex] + 1;
+            }
+            String kind = opcodes[i] == BfInstruction.LOOP_START ? "Loop" : BfInstruction.getMnemonic(opcodes[i]);
+            loops.add(new Loop(kind, i, line, column, counts[i], iterations, costs[end + 1] - costs[i]));
+        }
+        loops.sort(Comparator.comparingLong(Loop::getCost).reversed());
+        this.loops = Collections.unmodifiableList(loops);
+        this.totalCost = costs[opcodes.length];
+        this.elapsedTime = elapsedTime;
+        this.status = status;
+    }
+
+    /**
+     * Getter of {@link #loops}
+     * @return Value of {@link #loops}
+     */
+    public List<Loop> getLoops() {
+        return loops;
+    }
+
+    /**
+     * Getter of {@link #totalCost}
+     * @return Value of {@link #totalCost}
+     */
+    public long getTotalCost() {
+        return totalCost;
+    }
+
+    /**
+     * Getter of {@link #elapsedTime}
+     * @return Value of {@link #elapsedTime}
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    /**
+     * Getter of {@link #status}
+     * @return Value of {@link #status}
+     */
+    public BrainfuckResult.Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Format a report of the hottest loops
+     * @param limit  Maximum number of loops in the report
+     * @return  Report (one loop per line)
+     */
+    public String format(int limit) {
+        String nl = System.getProperty("line.separator");
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Executed instructions: %d (%.3f ms)", totalCost, elapsedTime / 1000 / 1000.0)).append(nl);
+        sb.append(String.format("%4s  %-11s  %-9s  %14s  %16s  %14s  %18s  %6s",
+                    "Rank", "Position", "Kind", "Entries", "Iterations", "Avg trips", "Instructions", "%")).append(nl);
+        for (int i = 0; i < Math.min(limit, loops.size()); i++) {
+            Loop loop = loops.get(i);
+            String position = loop.getLine() == 0 ? "#" + loop.getIndex() : loop.getLine() + ":" + loop.getColumn();
+            sb.append(String.format("%4d  %-11s  %-9s  %14d  %16d  %14.2f  %18d  %6.2f",
+                        i + 1, position, loop.getKind(), loop.getEntries(), loop.getIterations(),
+                        loop.getAverageTripCount(), loop.getCost(), totalCost == 0 ? 0.0 : 100.0 * loop.getCost() / totalCost))
+                .append(nl);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Find the start position of each line
+     * @param bfSource  Brainfuck source code
+     * @return  Start position of each line in ascending order
+     */
+    private static int[] findLineStarts(byte[] bfSource) {
+        int nLines = 1;
+        for (byte c : bfSource) {
+            if (c == '\n') {
+                nLines++;
+            }
+        }
+        int[] lineStarts = new int[nLines];
+        int line = 1;
+        for (int i = 0; i < bfSource.length; i++) {
+            if (bfSource[i] == '\n') {
+                lineStarts[line++] = i + 1;
+            }
+        }
+        return lineStarts;
+    }
+}
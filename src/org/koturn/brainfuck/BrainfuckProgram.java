@@ -0,0 +1,355 @@
+package org.koturn.brainfuck;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+
+/**
+ * Immutable brainfuck program created by {@link Brainfuck#compile()}.
+ * A program can be executed concurrently on many threads; each execution has its own heap and input/output.
+ */
+public final class BrainfuckProgram {
+    /**
+     * Brainfuck source code ({@code null} if the program is compiled without keeping the source code)
+     */
+    private final byte[] bfSource;
+    /**
+     * Index of the matching bracket for each bracket in {@link #bfSource} ({@code null} until it is needed)
+     */
+    private volatile int[] jumpTable;
+    /**
+     * Brainfuck IR-code ({@code null} if the program is not compiled)
+     */
+    private final BfIRCode ircode;
+    /**
+     * Bit width of each cell (8, 16 or 32)
+     */
+    private final int cellBits;
+    /**
+     * IR-code translated to JVM bytecode ({@code null} until the program is executed in JIT mode)
+     */
+    private volatile BfCompiledCode jitCode;
+    /**
+     * Whether translation to JVM bytecode is already tried or not
+     */
+    private volatile boolean isJitTried;
+    /**
+     * IR-code and its loops compiled in tiered execution ({@code null} until the program is executed in tiered mode)
+     */
+    private volatile BfTieredCode tieredCode;
+
+    /**
+     * Ctor
+     * @param bfSource   Brainfuck source code ({@code null} if it is not kept)
+     * @param jumpTable  Index of the matching bracket for each bracket in {@code bfSource} ({@code null} to build it lazily)
+     * @param ircode     Brainfuck IR-code ({@code null} if the program is not compiled)
+     * @param cellBits   Bit width of each cell (8, 16 or 32)
+     */
+    BrainfuckProgram(byte[] bfSource, int[] jumpTable, BfIRCode ircode, int cellBits) {
+        this.bfSource = bfSource;
+        this.jumpTable = jumpTable;
+        this.ircode = ircode;
+        this.cellBits = cellBits;
+    }
+
+    /**
+     * Check whether this program is compiled to IR-code or not
+     * @return  {@code true} if this program can be executed in {@link Brainfuck.ExecuteMode#Compiled},
+     *          {@link Brainfuck.ExecuteMode#Jit} and {@link Brainfuck.ExecuteMode#Tiered} mode, otherwise {@code false}
+     */
+    public boolean isCompiled() {
+        return ircode != null;
+    }
+
+    /**
+     * Get bit width of each cell
+     * @return  Bit width of each cell
+     */
+    public int getCellBits() {
+        return cellBits;
+    }
+
+    /**
+     * Execute this program with specified input source and output destination without limit
+     * @param heapSize  Maximum runtime heap size
+     * @param mode      Execution mode
+     * @param in        Input source
+     * @param out       Output destination (flushed before this method returns)
+     * @return  Result of the execution (its output is {@code null})
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     * @see #execute(int, Brainfuck.ExecuteMode, BrainfuckLimit, BrainfuckInput, BrainfuckOutput)
+     */
+    public BrainfuckResult execute(int heapSize, Brainfuck.ExecuteMode mode, BrainfuckInput in, BrainfuckOutput out) throws IOException {
+        return execute(heapSize, mode, BrainfuckLimit.NONE, in, out);
+    }
+
+    /**
+     * Execute this program with specified input source and output destination.
+     * If the program exceeds {@code limit}, it is stopped at a back-edge of a loop and the status of the result tells the reason;
+     * output written until then is flushed.
+     * This method is thread-safe.
+     * @param heapSize  Maximum runtime heap size
+     * @param mode      Execution mode
+     * @param limit     Limit of the execution
+     * @param in        Input source
+     * @param out       Output destination (flushed before this method returns)
+     * @return  Result of the execution (its output is {@code null})
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     * @throws BrainfuckTapeOverflowException  Throw when the program uses more cells than {@code heapSize}
+     * @throws IllegalStateException  Throw when {@code mode} requires IR-code but this program is not compiled,
+     *                                or {@code mode} is {@link Brainfuck.ExecuteMode#Normal} but the source code is not kept
+     */
+    public BrainfuckResult execute(int heapSize, Brainfuck.ExecuteMode mode, BrainfuckLimit limit, BrainfuckInput in, BrainfuckOutput out) throws IOException {
+        if (mode != Brainfuck.ExecuteMode.Normal && ircode == null) {
+            throw new IllegalStateException("Program is not compiled");
+        }
+        if (mode == Brainfuck.ExecuteMode.Normal && bfSource == null) {
+            throw new IllegalStateException("Source code is not kept");
+        }
+        long start = System.nanoTime();
+        BfBudget budget = new BfBudget(limit.getMaxSteps(), limit.getTimeout());
+        BfExecutionContext context = new BfExecutionContext(heapSize, cellBits, out, in, budget);
+        BrainfuckResult.Status status = BrainfuckResult.Status.Completed;
+        try {
+            if (mode != Brainfuck.ExecuteMode.Normal) {
+                budget.charge(ircode.getEvaluatedSteps());
+            }
+            switch (mode) {
+                case Normal:
+                    context.runNormal(bfSource, getJumpTable());
+                    break;
+                case Compiled:
+                    context.runIR(ircode);
+                    break;
+                case Jit:
+                    {
+                        BfCompiledCode code = getJitCode();
+                        if (code == null) {
+                            // Too large to translate at once, so translate hot loops
+                            context.runTiered(getTieredCode());
+                        } else {
+                            context.runJit(code, ircode);
+                        }
+                    }
+                    break;
+                case Tiered:
+                    context.runTiered(getTieredCode());
+                    break;
+            }
+        } catch (BfBudgetExhaustedException e) {
+            status = e.isTimedOut() ? BrainfuckResult.Status.TimedOut : BrainfuckResult.Status.StepLimitExceeded;
+        } finally {
+            out.flush();
+        }
+        return new BrainfuckResult(null, System.nanoTime() - start, status);
+    }
+
+    /**
+     * Execute this program with specified input and output streams
+     * @param heapSize  Maximum runtime heap size
+     * @param mode      Execution mode
+     * @param is        Input stream
+     * @param os        Output stream (flushed before this method returns)
+     * @return  Result of the execution (its output is {@code null})
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     * @see #execute(int, Brainfuck.ExecuteMode, BrainfuckInput, BrainfuckOutput)
+     */
+    public BrainfuckResult execute(int heapSize, Brainfuck.ExecuteMode mode, InputStream is, OutputStream os) throws IOException {
+        return execute(heapSize, mode, new BrainfuckInput(is), new BrainfuckOutput(os));
+    }
+
+    /**
+     * Execute this program with in-memory input and return its output
+     * @param heapSize  Maximum runtime heap size
+     * @param mode      Execution mode
+     * @param input     Input of the program (its position is not modified)
+     * @return  Result of the execution which holds the output
+     * @throws IOException  Never thrown unless the program itself is broken
+     * @see #execute(int, Brainfuck.ExecuteMode, BrainfuckInput, BrainfuckOutput)
+     */
+    public BrainfuckResult execute(int heapSize, Brainfuck.ExecuteMode mode, ByteBuffer input) throws IOException {
+        return execute(heapSize, mode, BrainfuckLimit.NONE, input);
+    }
+
+    /**
+     * Execute this program with in-memory input and return its output
+     * @param heapSize  Maximum runtime heap size
+     * @param mode      Execution mode
+     * @param limit     Limit of the execution
+     * @param input     Input of the program (its position is not modified)
+     * @return  Result of the execution which holds the output written until the program terminated or was stopped
+     * @throws IOException  Never thrown unless the program itself is broken
+     * @see #execute(int, Brainfuck.ExecuteMode, BrainfuckLimit, BrainfuckInput, BrainfuckOutput)
+     */
+    public BrainfuckResult execute(int heapSize, Brainfuck.ExecuteMode mode, BrainfuckLimit limit, ByteBuffer input) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        BrainfuckResult result = execute(heapSize, mode, limit, new BrainfuckInput(input), new BrainfuckOutput(os));
+        return new BrainfuckResult(os.toByteArray(), result.getElapsedTime(), result.getStatus());
+    }
+
+    /**
+     * Execute this program with in-memory input and return its output
+     * @param heapSize  Maximum runtime heap size
+     * @param mode      Execution mode
+     * @param input     Input of the program
+     * @return  Result of the execution which holds the output
+     * @throws IOException  Never thrown unless the program itself is broken
+     * @see #execute(int, Brainfuck.ExecuteMode, ByteBuffer)
+     */
+    public BrainfuckResult execute(int heapSize, Brainfuck.ExecuteMode mode, byte[] input) throws IOException {
+        return execute(heapSize, mode, ByteBuffer.wrap(input));
+    }
+
+    /**
+     * Execute IR-code of this program counting executions of each instruction without limit
+     * @param heapSize  Maximum runtime heap size
+     * @param in        Input source
+     * @param out       Output destination (flushed before this method returns)
+     * @return  Profile of the execution
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     * @throws BrainfuckTapeOverflowException  Throw when the program uses more cells than {@code heapSize}
+     * @throws IllegalStateException  Throw when this program is not compiled
+     * @see #profile(int, BrainfuckLimit, BrainfuckInput, BrainfuckOutput)
+     */
+    public BrainfuckProfile profile(int heapSize, BrainfuckInput in, BrainfuckOutput out) throws IOException {
+        return profile(heapSize, BrainfuckLimit.NONE, in, out);
+    }
+
+    /**
+     * Execute IR-code of this program counting executions of each instruction.
+     * If the program exceeds {@code limit}, it is stopped at a back-edge of a loop and the status of the profile tells the reason;
+     * the profile covers the execution until then.
+     * Profiling uses its own interpreter loop, which is much slower than {@link Brainfuck.ExecuteMode#Compiled} mode.
+     * Source positions of loops are known only if this program is compiled from the source code in memory,
+     * not loaded from a precompiled IR-code file nor compiled from a stream.
+     * This method is thread-safe.
+     * @param heapSize  Maximum runtime heap size
+     * @param limit     Limit of the execution
+     * @param in        Input source
+     * @param out       Output destination (flushed before this method returns)
+     * @return  Profile of the execution
+     * @throws IOException  Throw when something error is occured while reading input or writing output
+     * @throws BrainfuckTapeOverflowException  Throw when the program uses more cells than {@code heapSize}
+     * @throws IllegalStateException  Throw when this program is not compiled
+     */
+    public BrainfuckProfile profile(int heapSize, BrainfuckLimit limit, BrainfuckInput in, BrainfuckOutput out) throws IOException {
+        if (ircode == null) {
+            throw new IllegalStateException("Program is not compiled");
+        }
+        long[] counts = new long[ircode.size()];
+        long[] scanSteps = new long[ircode.size()];
+        long start = System.nanoTime();
+        BfBudget budget = new BfBudget(limit.getMaxSteps(), limit.getTimeout());
+        BrainfuckResult.Status status = BrainfuckResult.Status.Completed;
+        try {
+            budget.charge(ircode.getEvaluatedSteps());
+            new BfExecutionContext(heapSize, cellBits, out, in, budget).runProfile(ircode, counts, scanSteps);
+        } catch (BfBudgetExhaustedException e) {
+            status = e.isTimedOut() ? BrainfuckResult.Status.TimedOut : BrainfuckResult.Status.StepLimitExceeded;
+        } finally {
+            out.flush();
+        }
+        return new BrainfuckProfile(bfSource, ircode, counts, scanSteps, System.nanoTime() - start, status);
+    }
+
+    /**
+     * Compile this program ahead of time to a class file.
+     * The class belongs to the package {@code org.koturn.brainfuck} and its {@code main} method executes this program
+     * with standard input and standard output, so it runs with this library on the class path.
+     * The class file is written to {@code org/koturn/brainfuck/CLASS_NAME.class} under {@code directory},
+     * so {@code directory} is added to the class path to run it.
+     * @param heapSize   Maximum runtime heap size of the generated program
+     * @param directory  Class path directory
+     * @param className  Simple name of the generated class
+     * @return  Path to the written class file
+     * @throws IOException  Throw when something error is occured while writing the file
+     * @throws IllegalArgumentException  Throw when {@code className} is not a valid class name or it is the name of a runtime class
+     * @throws IllegalStateException  Throw when this program is not compiled or it is too large to compile to a class file
+     */
+    public Path writeClass(int heapSize, Path directory, String className) throws IOException {
+        if (ircode == null) {
+            throw new IllegalStateException("Program is not compiled");
+        }
+        return BfAotCompiler.writeClass(directory, BfAotCompiler.compile(ircode, cellBits, heapSize, className), className);
+    }
+
+    /**
+     * Compile this program ahead of time to a runnable jar.
+     * The jar contains the class written by {@link #writeClass(int, Path, String)} and the runtime classes which it needs,
+     * so it runs by {@code java -jar} without this library.
+     * @param heapSize   Maximum runtime heap size of the generated program
+     * @param path       Path to the jar
+     * @param className  Simple name of the generated class
+     * @throws IOException  Throw when something error is occured while writing the file
+     * @throws IllegalArgumentException  Throw when {@code className} is not a valid class name or it is the name of a runtime class
+     * @throws IllegalStateException  Throw when this program is not compiled or it is too large to compile to a class file
+     */
+    public void writeJar(int heapSize, Path path, String className) throws IOException {
+        if (ircode == null) {
+            throw new IllegalStateException("Program is not compiled");
+        }
+        BfAotCompiler.writeJar(path, BfAotCompiler.compile(ircode, cellBits, heapSize, className), className);
+    }
+
+    /**
+     * Get IR-code
+     * @return  Brainfuck IR-code ({@code null} if the program is not compiled)
+     */
+    BfIRCode getIRCode() {
+        return ircode;
+    }
+
+    /**
+     * Get the program with another cell width.
+     * IR-code is shared with this program because it doesn't depend on the cell width.
+     * @param cellBits  Bit width of each cell (8, 16 or 32)
+     * @return  This program if {@code cellBits} is same as {@link #getCellBits()}, otherwise a new program
+     */
+    BrainfuckProgram withCellBits(int cellBits) {
+        return cellBits == this.cellBits ? this : new BrainfuckProgram(bfSource, jumpTable, ircode, cellBits);
+    }
+
+    /**
+     * Get {@link #jumpTable}, building it if necessary
+     * @return  Jump table
+     */
+    private int[] getJumpTable() {
+        int[] table = jumpTable;
+        if (table == null) {
+            table = Brainfuck.buildJumpTable(bfSource);
+            jumpTable = table;
+        }
+        return table;
+    }
+
+    /**
+     * Get {@link #jitCode}, translating IR-code to JVM bytecode at the first call.
+     * Concurrent first calls may translate IR-code more than once, which is harmless.
+     * @return  IR-code translated to JVM bytecode, or {@code null} if IR-code is too large to translate
+     */
+    private BfCompiledCode getJitCode() {
+        if (!isJitTried) {
+            jitCode = BfJitCompiler.compile(ircode, cellBits);
+            isJitTried = true;
+        }
+        return jitCode;
+    }
+
+    /**
+     * Get {@link #tieredCode}, creating it at the first call.
+     * Concurrent first calls may create it more than once, which only loses loops compiled by the other call.
+     * @return  IR-code and its loops compiled in tiered execution
+     */
+    private BfTieredCode getTieredCode() {
+        BfTieredCode code = tieredCode;
+        if (code == null) {
+            code = new BfTieredCode(ircode, cellBits);
+            tieredCode = code;
+        }
+        return code;
+    }
+}
@@ -0,0 +1,207 @@
+package org.koturn.brainfuck;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+
+/**
+ * Size-bounded LRU cache of compiled brainfuck programs.
+ * Programs are keyed by the SHA-256 digest of the source code, the compile options and whether the source code is kept,
+ * so {@link Brainfuck#compile()} returns the cached {@link BrainfuckProgram} when the same program is loaded again.
+ * One cache can be shared by many {@link Brainfuck} instances running on different threads.
+ */
+public final class BrainfuckProgramCache {
+    /**
+     * Default maximum number of cached programs
+     */
+    public static final int DEFAULT_CAPACITY = 512;
+
+    /**
+     * Cache key which consists of the digest of source code, the compile options and whether the source code is kept
+     */
+    private static final class Key {
+        /**
+         * SHA-256 digest of source code
+         */
+        private final byte[] digest;
+        /**
+         * Bit width of each cell
+         */
+        private final int cellBits;
+        /**
+         * Optimize level
+         */
+        private final int optimizeLevel;
+        /**
+         * True if the program keeps its source code (a program compiled from a stream can't run in Normal mode)
+         */
+        private final boolean hasSource;
+
+        /**
+         * Ctor
+         * @param digest         SHA-256 digest of source code
+         * @param cellBits       Bit width of each cell
+         * @param optimizeLevel  Optimize level
+         * @param hasSource      True if the program keeps its source code
+         */
+        Key(byte[] digest, int cellBits, int optimizeLevel, boolean hasSource) {
+            this.digest = digest;
+            this.cellBits = cellBits;
+            this.optimizeLevel = optimizeLevel;
+            this.hasSource = hasSource;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((31 * Arrays.hashCode(digest) + cellBits) * 31 + optimizeLevel) * 2 + (hasSource ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return cellBits == other.cellBits && optimizeLevel == other.optimizeLevel && hasSource == other.hasSource
+                && Arrays.equals(digest, other.digest);
+        }
+    }
+
+    /**
+     * Cached programs in access order
+     */
+    private final LinkedHashMap<Key, BrainfuckProgram> entries;
+    /**
+     * Maximum number of cached programs
+     */
+    private final int capacity;
+    /**
+     * Number of lookups which found a cached program
+     */
+    private long hitCount;
+    /**
+     * Number of lookups which compiled a program
+     */
+    private long missCount;
+
+    /**
+     * Create a cache with {@link #DEFAULT_CAPACITY}
+     */
+    public BrainfuckProgramCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a cache
+     * @param capacity  Maximum number of cached programs
+     */
+    public BrainfuckProgramCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Key, BrainfuckProgram>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, BrainfuckProgram> eldest) {
+                return size() > BrainfuckProgramCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Get the number of lookups which found a cached program
+     * @return  The number of cache hits
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Get the number of lookups which compiled a program
+     * @return  The number of cache misses
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Get the number of cached programs
+     * @return  The number of cached programs
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get maximum number of cached programs
+     * @return  Maximum number of cached programs
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Remove all cached programs (counters are not reset)
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Get a cached program, or compile and cache it if it is not cached.
+     * Compilation runs without holding the lock, so the same program may be compiled concurrently;
+     * in that case the first stored one is returned.
+     * @param digest         SHA-256 digest of brainfuck source code (see {@link #digest(byte[])})
+     * @param cellBits       Bit width of each cell
+     * @param optimizeLevel  Optimize level
+     * @param hasSource      True if the compiled program keeps its source code
+     * @param compiler       Function which compiles the source code
+     * @return  Cached program
+     */
+    BrainfuckProgram get(byte[] digest, int cellBits, int optimizeLevel, boolean hasSource, Supplier<BrainfuckProgram> compiler) {
+        Key key = new Key(digest, cellBits, optimizeLevel, hasSource);
+        synchronized (this) {
+            BrainfuckProgram program = entries.get(key);
+            if (program != null) {
+                hitCount++;
+                return program;
+            }
+            missCount++;
+        }
+        BrainfuckProgram program = compiler.get();
+        synchronized (this) {
+            BrainfuckProgram cached = entries.putIfAbsent(key, program);
+            return cached == null ? program : cached;
+        }
+    }
+
+    /**
+     * Compute SHA-256 digest
+     * @param bfSource  Brainfuck source code
+     * @return  Digest of {@code bfSource}
+     */
+    static byte[] digest(byte[] bfSource) {
+        return newDigest().digest(bfSource);
+    }
+
+    /**
+     * Create SHA-256 digest to compute it incrementally
+     * @return  New digest
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.koturn.brainfuck;
+
+/**
+ * Result of one execution of a brainfuck program
+ */
+public final class BrainfuckResult {
+    /**
+     * How an execution ended
+     */
+    public enum Status {
+        /**
+         * The program terminated
+         */
+        Completed,
+        /**
+         * The program was stopped because it took more steps than the limit
+         */
+        StepLimitExceeded,
+        /**
+         * The program was stopped because the timeout elapsed
+         */
+        TimedOut
+    }
+
+    /**
+     * Output of the program ({@code null} if output was written to a stream or a channel)
+     */
+    private final byte[] output;
+    /**
+     * Execution time in nanoseconds
+     */
+    private final long elapsedTime;
+    /**
+     * How the execution ended
+     */
+    private final Status status;
+
+    /**
+     * Ctor
+     * @param output       Output of the program ({@code null} if output was written to a stream or a channel)
+     * @param elapsedTime  Execution time in nanoseconds
+     * @param status       How the execution ended
+     */
+    BrainfuckResult(byte[] output, long elapsedTime, Status status) {
+        this.output = output;
+        this.elapsedTime = elapsedTime;
+        this.status = status;
+    }
+
+    /**
+     * Getter of {@link #output}
+     * @return Value of {@link #output}
+     */
+    public byte[] getOutput() {
+        return output;
+    }
+
+    /**
+     * Getter of {@link #elapsedTime}
+     * @return Value of {@link #elapsedTime}
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    /**
+     * Getter of {@link #status}
+     * @return Value of {@link #status}
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Check whether the program terminated or was stopped by a limit
+     * @return  {@code true} if the program terminated, otherwise {@code false}
+     */
+    public boolean isCompleted() {
+        return status == Status.Completed;
+    }
+}
@@ -0,0 +1,22 @@
+package org.koturn.brainfuck;
+
+/**
+ * An exception throwed when loading brainfuck source code.
+ * This exception is throwed when detected unbalanced brackets.
+ */
+public class BrainfuckSyntaxException extends BrainfuckException {
+    /**
+     * Null message exception
+     */
+    public BrainfuckSyntaxException() {
+        super();
+    }
+    /**
+     * Create message for exception with position of the bracket
+     * @param msg       Base message
+     * @param position  Position of the bracket in source code
+     */
+    public BrainfuckSyntaxException(String msg, long position) {
+        super(msg + ": at " + position);
+    }
+}
@@ -0,0 +1,28 @@
+package org.koturn.brainfuck;
+
+/**
+ * An exception throwed when the heap pointer moves beyond the maximum heap size.
+ */
+public class BrainfuckTapeOverflowException extends BrainfuckException {
+    /**
+     * Null message exception
+     */
+    public BrainfuckTapeOverflowException() {
+        super();
+    }
+    /**
+     * Create message for exception with the position of the pointer
+     * @param position     Position of the pointer relative to the initial position
+     * @param maxHeapSize  Maximum heap size
+     */
+    public BrainfuckTapeOverflowException(long position, int maxHeapSize) {
+        super("Tape overflow: cell " + position + " is out of the heap (maximum heap size is " + maxHeapSize + ")");
+    }
+    /**
+     * Create message for exception when a cell out of the heap is accessed
+     * @param maxHeapSize  Maximum heap size
+     */
+    public BrainfuckTapeOverflowException(int maxHeapSize) {
+        super("Tape overflow: a cell out of the heap is accessed (maximum heap size is " + maxHeapSize + ")");
+    }
+}
@@ -220,7 +220,7 @@ public class ArgumentParser {
                 item.setValue(value == null ? "true" : value);
                 return idx;
             case RequreidArgument:
-                if (keyval.length == 1) {
+                if (value == null) {
                     if (idx + 1 >= args.length) {
                         throw new ArgumentParserMissingArgumentException(longName);
                     }
@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.koturn.brainfuck.Brainfuck;
+import org.koturn.brainfuck.BrainfuckResult;
+import org.koturn.brainfuck.BrainfuckTapeOverflowException;
+
+/**
+ * Test of programs which use almost all of a small heap.
+ * Every execution mode, optimize level and cell width must behave the same as the direct execution.
+ */
+public class HeapSizeTest {
+    /**
+     * Maximum heap size of the tests
+     */
+    private static final int HEAP_SIZE = 40;
+    /**
+     * Program which accesses only the cells from 0 to 36 and writes {@code 0xfe}
+     */
+    private static final String FITTING_PROGRAM = ">".repeat(34) + "--.>><[>]-";
+    /**
+     * Program which accesses the cell 40
+     */
+    private static final String OVERFLOWING_PROGRAM = ">".repeat(HEAP_SIZE) + "+.";
+
+    /**
+     * Number of failed cases
+     */
+    private static int nFailures = 0;
+
+    /**
+     * Run all tests and exit with status 1 if any of them fails
+     * @param args  Unused
+     * @throws IOException  Throw when something error is occured while writing output
+     */
+    public static void main(String[] args) throws IOException {
+        for (int cellBits : new int[] {8, 16, 32}) {
+            for (int optimizeLevel = 1; optimizeLevel <= Brainfuck.MAX_OPTIMIZE_LEVEL; optimizeLevel++) {
+                for (Brainfuck.ExecuteMode mode : Brainfuck.ExecuteMode.values()) {
+                    String name = mode + " -O" + optimizeLevel + " --cell-bits=" + cellBits;
+                    testFitting(name, cellBits, optimizeLevel, mode);
+                    testOverflowing(name, cellBits, optimizeLevel, mode);
+                }
+            }
+        }
+        if (nFailures > 0) {
+            System.err.println(nFailures + " test(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All tests passed");
+    }
+
+    /**
+     * Check that a program whose accessed cells fit in the heap completes
+     * even if the offsets of the whole program don't fit
+     * @param name           Name of the case
+     * @param cellBits       Bit width of each cell
+     * @param optimizeLevel  Optimize level
+     * @param mode           Execution mode
+     * @throws IOException  Throw when something error is occured while writing output
+     */
+    private static void testFitting(String name, int cellBits, int optimizeLevel, Brainfuck.ExecuteMode mode) throws IOException {
+        try {
+            BrainfuckResult result = newBrainfuck(FITTING_PROGRAM, cellBits, optimizeLevel).execute(HEAP_SIZE, mode, new byte[0]);
+            if (!result.isCompleted() || !Arrays.equals(result.getOutput(), new byte[] {(byte) 0xfe})) {
+                fail(name, "fitting program output " + Arrays.toString(result.getOutput()) + " with status " + result.getStatus());
+            }
+        } catch (BrainfuckTapeOverflowException e) {
+            fail(name, "fitting program threw " + e);
+        }
+    }
+
+    /**
+     * Check that a program which accesses a cell out of the heap is stopped
+     * @param name           Name of the case
+     * @param cellBits       Bit width of each cell
+     * @param optimizeLevel  Optimize level
+     * @param mode           Execution mode
+     * @throws IOException  Throw when something error is occured while writing output
+     */
+    private static void testOverflowing(String name, int cellBits, int optimizeLevel, Brainfuck.ExecuteMode mode) throws IOException {
+        try {
+            BrainfuckResult result = newBrainfuck(OVERFLOWING_PROGRAM, cellBits, optimizeLevel).execute(HEAP_SIZE, mode, new byte[0]);
+            fail(name, "overflowing program output " + Arrays.toString(result.getOutput()) + " with status " + result.getStatus());
+        } catch (BrainfuckTapeOverflowException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Create an interpreter which has loaded a program
+     * @param bfSource       Brainfuck source code
+     * @param cellBits       Bit width of each cell
+     * @param optimizeLevel  Optimize level
+     * @return  Interpreter
+     */
+    private static Brainfuck newBrainfuck(String bfSource, int cellBits, int optimizeLevel) {
+        Brainfuck bf = new Brainfuck();
+        bf.setCellBits(cellBits);
+        bf.setOptimizeLevel(optimizeLevel);
+        bf.loadString(bfSource);
+        return bf;
+    }
+
+    /**
+     * Report a failed case
+     * @param name     Name of the case
+     * @param message  Description of the failure
+     */
+    private static void fail(String name, String message) {
+        System.err.println("FAILED: " + name + ": " + message);
+        nFailures++;
+    }
+}